@@ -165,6 +165,103 @@
  *  Maintenance: MB. 25/11/2008. Version 22.06
  *      Update of the -help more facility and the numbering of
  *          un-numbered warnings.
+ *  Maintenance: 19/10/2026. Version 22.07
+ *      The main loops now compare through a column plan, built once per
+ *          run by build_audit_plan(), which lists only the audited columns.
+ *  Maintenance: 19/10/2026. Version 22.08
+ *      All META_DWH_TABLE_FIELD rows of the target table are fetched once by
+ *          prefetch_meta_data() and every meta-data lookup is answered from
+ *          memory. Added the -M option to keep them in a local cache file.
+ *      "Columns in meta data not audited" now lists the unaudited columns
+ *          whose source_system_name contains the -s system. It was always
+ *          empty before: the query's like '*MP*' matched a literal '*'.
+ *  Maintenance: 19/10/2026. Version 22.09
+ *      column_exists() answers from the column names of one
+ *          'select * ... where 1=0' per target table, instead of preparing
+ *          (and leaking) a statement per column.
+ *  Maintenance: 19/10/2026. Version 22.10
+ *      The load statement emulation inserts in JDBC batches, committed per
+ *          batch, with a reused field array. Added the -B batch-size option.
+ *  Maintenance: 19/10/2026. Version 22.11
+ *      The unload statement emulation streams a forward-only cursor with a
+ *          large fetch size into a buffered file, gzipped if named *.gz.
+ *          Added the -U option to unload key ranges in parallel.
+ *  Maintenance: 19/10/2026. Version 22.12
+ *      Count the statements executed per row in _roundTrips, for the
+ *          MetaqaLoad throughput harness.
+ *  Maintenance: 19/10/2026. Version 22.13
+ *      Added the -P option for a metrics file of the time spent in each
+ *          phase of the audit and a target lookup latency histogram, as
+ *          JSON or Prometheus text. Written with progress and at the end.
+ *  Maintenance: 19/10/2026. Version 22.14
+ *      Added the -R option to report progress from a timer thread, with
+ *          rows/s, percentage done, ETA and the rolling p50/p99 target
+ *          lookup latency. Added -C to count the source query rows first.
+ *  Maintenance: 19/10/2026. Version 22.15
+ *      Added the -L option to run the main loop as a pipeline: a reader
+ *          thread, <n> target lookup threads on their own connections, the
+ *          diff, and a spreadsheet writer thread. -O keeps the source order.
+ *  Maintenance: 19/10/2026. Version 22.16
+ *      Added "-L <n> virtual": each row's lookup runs on its own virtual
+ *          thread (a pooled thread before Java 21), at most <n> at a time.
+ *  Maintenance: 19/10/2026. Version 22.17
+ *      Less garbage per row: the flat-file split, is_numeric(), is_date()
+ *          and the trims and space tests of the diffs no longer make regex
+ *          or trimmed copies. Equal numeric text skips BigDecimal, and
+ *          date_diff() keeps the last date parsed in each column.
+ *  Maintenance: 19/10/2026. Version 22.18
+ *      No more column limit. The column arrays start small and are sized
+ *          from the table by size_columns() once the column count is known,
+ *          so wide tables no longer need a recompile.
+ *  Maintenance: 19/10/2026. Version 22.19
+ *      -S percent [seed] audits a reproducible sample of the keys, chosen by
+ *          a hash of the key, or by the source query on a numeric key. The
+ *          end of run reports each column's estimated error rate with a 95%
+ *          confidence interval. See in_sample() and report_sample().
+ *  Maintenance: 19/10/2026. Version 22.20
+ *      -A columns audits only the keys and the named columns, as names or
+ *          regular expressions. The others are left out of the target query,
+ *          not parsed from the source and not compared, and are listed under
+ *          "Columns in meta data not audited" at the end of the spreadsheet.
+ *  Maintenance: 19/10/2026. Version 22.21
+ *      The target lookup binds each key as its column's JDBC type, found once
+ *          by resolve_key_types(), instead of as text, so that numeric and
+ *          date keys can use the primary key index. See bind_key().
+ *  Maintenance: 19/10/2026. Version 22.22
+ *      -J loads the source rows into a temp table on TARGET in batches and
+ *          compares them with one outer join, which with -r also finds the
+ *          NoSource rows. See main_loop_joined().
+ *  Maintenance: 19/10/2026. Version 22.23
+ *      -Q compares in the dBase when the source query runs on the TARGET
+ *          connection: one outer join returns only the differing, Missing
+ *          and NoSource rows, comparing text by case and length. Only on
+ *          Informix, Oracle, SQL Server and H2. See main_loop_in_database().
+ *  Maintenance: 19/10/2026. Version 22.24
+ *      -K snapshot-file unloads the TARGET columns once in key order with a
+ *          sparse, memory mapped index, and later runs look the rows up in it
+ *          instead of the TARGET dBase. See class TargetSnapshot.
+ *  Maintenance: 19/10/2026. Version 22.25
+ *      -F target-file [run-rows] compares the input-file to a second flat file
+ *          without a dBase, by sorting both on disk and merging them.
+ *          See main_loop_file_merge() and class ExternalSort.
+ *  Maintenance: 19/10/2026. Version 22.26
+ *      -W window-rows looks up the source rows a window at a time in key
+ *          order, for the locality of the TARGET index. See window_flush().
+ *  Maintenance: 19/10/2026. Version 22.27
+ *      -X cache-megabytes keeps the TARGET rows looked up, and the keys not
+ *          found, in a least recently used cache. See fetch_keyed_row().
+ *  Maintenance: 19/10/2026. Version 22.28
+ *      -E [batch-keys] checks only that the keys are in both, without the
+ *          other columns, looking up a batch of keys per query.
+ *          See presence_lookups().
+ *  Maintenance: 19/10/2026. Version 22.29
+ *      -G [skip] profiles the columns on both sides first and reports which
+ *          reconcile; with skip, the exact numeric ones are not audited row
+ *          by row. See profile_columns().
+ *  Maintenance: 19/10/2026. Version 22.30
+ *      The end of the spreadsheet summarises the differences by column, with
+ *          the most frequent value pairs. -N keeps auditing past -m max-errs
+ *          for the summary only. See report_column_summary().
  *  Maintenance: MB. dd/MM/yyy. Version xx.xx
  *      Need to get the target column data type from the target database's
  *          meta data and use this to format and compare the date or a number.
@@ -210,12 +307,28 @@
  * @author w6000963 Mark Besaans
  */
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.*;
 import java.util.Date;
 import java.util.Calendar;
 import java.text.SimpleDateFormat;
 import java.io.*;
 import java.sql.*;  //import java.sql.Time;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import com.informix.jdbc.*;
 import oracle.jdbc.driver.*;
 import com.microsoft.sqlserver.jdbc.*;
@@ -225,7 +338,7 @@ import com.microsoft.sqlserver.jdbc.*;
 
 public class Metaqa {
     //# General static stuff.
-    static final String _version = "metaqa Ver 22.06 released 25/11/2008";
+    static final String _version = "metaqa Ver 22.30 released 19/10/2026";
     static Date startTime = new Date();
     static String endTime = null;
     static String _scratch="";                   //# Generic tmp string working with text.
@@ -258,19 +371,77 @@ public class Metaqa {
     static int _key_element = 1;                 //# The current Key Element.
     static int src_field_count = 0;              //# How many fields in the input stream, file or SQL.
     static int tgt_col_count = 0;                //# How many columns in the target table.
-    static int _rowsChecked = 0;                 //# How many input lines/rows read.
+    static volatile int _rowsChecked = 0;        //# How many input lines/rows read. Volatile for the -R timer thread.
     static int _progress_every = 1000;           //# Show progress every ? input lines.
     static int _jump_over_lines = 0;             //# Skip over this number of nput file lines.
     static int _missingRowsInReverseCompare = 0; //# Total reverse missing keys.
+    static long _roundTrips = 0;                 //# Queries and updates sent to a database by the compare. See MetaqaLoad.
+    static int _rowsAudited = 0;                 //# Source rows looked up in TARGET.
+    static int _rowsMissing = 0;                 //# Of them, missing from TARGET.
+
+    //# Sampling stuff. See in_sample() and report_sample().
+    static double samplePercent = 0;             //# -S option. Audit about this percentage of the keys. 0 = all of them.
+    static long sampleSeed = 0;                  //# -S option. Another seed audits another reproducible sample.
+    static final int sampleSpace = 10000;        //# Key hashes are taken modulo this,
+    static int sampleBound = 0;                  //#   and those below this bound are audited.
+    static boolean samplePushedDown = false;     //# The source query returns only the sample.
+
+    //# Column subset stuff. See project_target_query().
+    static String auditColumns = null;           //# -A option. Comma separated column names or regular expressions.
+    static Pattern auditColumnPattern = null;    //# -A as one case insensitive pattern. null = all columns.
+    static int tgtSelectCount = 0;               //# How many columns the target query selects.
+
+    //# Metrics stuff. See metric_stop() and write_metrics().
+    static String metricsFileName = null;        //# -P option. JSON if named *.json, else Prometheus text.
+    static boolean metricsOn = false;            //# Set by -P. The phase timers cost nothing when off.
+    static final int _pRead = 0, _pLookup = 1,   //# The phases timed.
+        _pFetch = 2, _pPrime = 3, _pDiffNumeric = 4, _pDiffDate = 5,
+        _pDiffCharacter = 6, _pWrite = 7, _pReverseInsert = 8,
+        _pReverseQuery = 9, _phases = 10;
+    static final String[] phaseName = {"source_read", "target_lookup", "target_fetch",
+        "type_priming", "diff_numeric", "diff_date", "diff_character", "output_write",
+        "reverse_insert", "reverse_query"};
+    static long[] phaseNanos = new long[_phases];//# Nano seconds spent in each phase.
+    static long[] phaseCount = new long[_phases];//# Times each phase was timed.
+    static final double[] lookupBucket = {0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005,
+        0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10}; //# Seconds. Upper bounds of the lookup latency buckets.
+    static long[] lookupHist =                   //# Lookups per bucket. The last one is +Inf.
+        new long[lookupBucket.length+1];
+
+    //# Live progress stuff. See live_progress().
+    static int progressSeconds = 0;              //# -R option. Seconds between progress lines from a timer thread. 0 = every -p rows instead.
+    static boolean countSourceRows = false;      //# -C option. Count the source query rows first, for the percentage done.
+    static long sourceRowTotal = -1;             //# Rows in the source query, -1 if not counted.
+    static FileInputStream sourceFileStream = null; //# The input flat-file, for its byte offset.
+    static long sourceFileBytes = 0;             //# The size of the input flat-file.
+    static java.util.Timer progressTimer = null; //# Runs live_progress().
+    static long[] progressAt = new long[10];     //# Sliding window of the latest progress samples:
+    static int[] progressRows = new int[10];     //#   the time, rows checked and fraction done.
+    static double[] progressDone = new double[10];
+    static int progressSamples = 0;
+    static long[] lookupRing = new long[1024];   //# The latest target lookup latencies in nano seconds.
+    static int lookupRingNext = 0;               //# Where the next latency goes.
+    static boolean lookupRingFull = false;       //# Has the ring wrapped around?
+
+    //# Pipeline stuff. See main_loop_pipelined().
+    static int lookupThreads = 0;                //# -L option. Target lookup threads, each with a connection. 0 = no pipeline.
+    static boolean keepRowOrder = false;         //# -O option. Diff and report the rows in source order.
+    static boolean virtualLookups = false;       //# -L <n> virtual. A thread per row lookup, at most <n> at a time.
+    static int pipelineDepth = 1024;             //# Rows in flight between two stages.
 
     //# The array structures.
-    static int siz = 256;                              //# Standard size of string arrays.
-    static int maxKeys = siz;                          //# Maximum number of columns to make up a key.
+    static int siz = 32;                               //# Size of the column arrays. See size_columns().
     static char[] _comparisonType = new char[siz];     //# One of: _numeric; _character; or _date.
     static SimpleDateFormat[] dFmtS =                  //# The Source date format.
                     new SimpleDateFormat[siz];         //# Something like "dd/MM/yy".
     static SimpleDateFormat dFmtT =                    //# The Target date format.
                     new SimpleDateFormat("yyyy-MM-dd");//# SDF of the target DB.
+    static final ThreadLocal<Map<SimpleDateFormat, SimpleDateFormat>> threadDateFormats =
+        new ThreadLocal<Map<SimpleDateFormat, SimpleDateFormat>>() {  //# Each thread's copies of dFmtS and dFmtT.
+            protected Map<SimpleDateFormat, SimpleDateFormat> initialValue() {
+                return new IdentityHashMap<SimpleDateFormat, SimpleDateFormat>();
+            }
+        };
     static String[] _srcMetaType = new String[siz];    //# Data type from the meta data.
     static String[] _srcMetaCol = new String[siz];     //# Data column name from the meta data.
     static String[] _srcMetaTab = new String[siz];     //# Data table name from the meta data.
@@ -282,9 +453,21 @@ public class Metaqa {
     static int[] key_pos = new int[siz];               //# Columnar position of the key in the array.
     static String[] key_pos_str = new String[siz];     //# Columnar position of the key in the array, but the command line string version of this parameter.
     //# NB. Key element 1 may be in column 6 so key elements are mapped.
+    static int[] auditCol = new int[siz];              //# Audited column numbers in ascending order. See build_audit_plan().
+    static ColumnDiff[] auditDiff = new ColumnDiff[siz]; //# The diff function of each auditCol[] entry.
+    static String[] dateTextT = new String[siz];       //# The last target date text parsed in each column,
+    static long[] dateMillisT = new long[siz];         //# and its value.
+    static String[] dateTextS = new String[siz];       //# The last source date text parsed in each column,
+    static long[] dateMillisS = new long[siz];         //# and its value. See date_diff().
+    static long[] columnDiffRows = new long[siz];      //# Rows reported unequal in each column.
+    static ColumnSummary[] columnSummary = new ColumnSummary[siz]; //# The differences in each column, once there are any.
+    static boolean[] columnSkipped = new boolean[siz]; //# Not selected, parsed or compared, by -A.
+    static int[] tgtCol = new int[siz];                //# The column of each target query column.
+    static int[] keyJdbcType = new int[siz];           //# java.sql.Types of each key element. See bind_key().
+    static int auditColCount = -1;                     //# Entries in the plan. -1 means build it before the next compare.
 
     static String[] field = new String[siz];           // for backward compatibility with .4gl split().
-    static String[] ar = new String[siz];              //# Array of command line Parameters.
+    static String[] ar = null;                         //# Array of command line Parameters.
     static BigDecimal x = null;                        // Numerics are converted to BigDecimal for comparison.
     static BigDecimal y = null;                        // Numerics are converted to BigDecimal for comparison.
     final static int _not_found = -1;                  //# Returned by String method indexOf().
@@ -292,6 +475,36 @@ public class Metaqa {
 
     //# Reverse Compare stuff.
     static boolean reverseCompare = false;             //# Off by default.
+    static boolean reverseCompareDone = false;         //# By the -J join.
+    static boolean joinLookup = false;                 //# -J option. Compare with one join on TARGET, not a lookup per row.
+    static boolean inDatabaseDiff = false;             //# -Q option. Let the dBase find the differing rows. See main_loop_in_database().
+    static String sourceQueryText = null;              //# The source query of a .sql input-file.
+    static String snapshotFileName = null;             //# -K option. The local TARGET snapshot.
+    static TargetSnapshot snapshot = null;             //# Open when the lookups read the snapshot.
+    static String[] snapshotKey = null;                //# The key looked up, from 0.
+    static String[] snapshotRow = null;                //# The row found, from 0, or null.
+    static String targetFileName = null;               //# -F option. The TARGET data-file, without a dBase.
+    static int sortRunRows = 100000;                   //# -F option. Rows sorted in memory per run.
+    static int sortWindow = 0;                         //# -W option. Source rows looked up in key order at a time.
+    static List<PipelineRow> window = new ArrayList<PipelineRow>(); //# -W option. Rows waiting for their lookup.
+    static boolean windowPrimed = false;               //# -W option. The TARGET data types were primed.
+    static LinkedHashMap<String,String[]> rowCache = null; //# -X option. TARGET rows by key, least recently used first.
+    static final String[] noRow = new String[0];       //# -X option. Cached for a key not in TARGET.
+    static long cacheLimit = 0;                        //# -X option. The bytes the cache may hold.
+    static long cacheBytes = 0;                        //# -X option. About the bytes it holds.
+    static String cacheKey = null;                     //# -X option. The key of the current lookup.
+    static String[] cachedRow = null;                  //# -X option. Its row, if it was a hit.
+    static long _cacheHits = 0, _cacheMisses = 0, _cacheEvictions = 0;
+    static boolean presenceOnly = false;               //# -E option. Only the keys, no other columns.
+    static int presenceBatch = 100;                    //# -E option. Keys looked up per query.
+    static PreparedStatement presenceQuery = null;     //# -E option. See prepare_presence_query().
+    static boolean profileColumns = false;             //# -G option. Reconcile the column profiles first.
+    static boolean profileSkip = false;                //# -G skip. Then skip the columns that reconcile.
+    static HashSet<String> profileMatched = new HashSet<String>(); //# -G skip. Their lower case names.
+    static List<String> profileLines = new ArrayList<String>();    //# -G option. For the spreadsheet.
+    static int summaryPairs = 10;                      //# The value pairs shown per column.
+    static boolean pastMaxErr = false;                 //# -N option. Audit on past -m, for the summary.
+    static PrintWriter reportSheet = null;             //# -N option. The spreadsheet, once -m is reached.
     static PreparedStatement reverseKeyUpd = null;     // To save the reverse compare key.
     static PreparedStatement reversePrepedQuery = null;// Reverse compare query.
     static ResultSet reverseCursor = null;             // Reverse compare Cursor.
@@ -327,10 +540,16 @@ public class Metaqa {
     static String metaJdbcUrl = defaultJdbcUrl;        // The database URL of the source data.
     static String metaJdbcUserId = "mqa";
     static String metaJdbcPassword = "london.";
-    static ResultSet metaColCursor = null;             // Cursor for meta-data columns.
-    static PreparedStatement metaColExistsPrep = null; // Query to check meta_data.
-    static PreparedStatement metaKeyTypePrep = null;   // Query to check key elements in the meta-data.
-    static PreparedStatement metaColsNotAuditedPrep = null; // Query for columns not audited in this run.
+    static HashSet<String> targetColumnSet = null;     //# Lower case column names of the target table. See target_column_set().
+    static String targetColumnSetOf = null;            //# The table that targetColumnSet was read from.
+    static ArrayList<String[]> metaRows =              //# All META_DWH_TABLE_FIELD rows of the target table
+        new ArrayList<String[]>();                     //# in design_sequence order. See prefetch_meta_data().
+    static HashMap<String,String[]> metaByField =      //# The same rows by lower case field_name.
+        new HashMap<String,String[]>();
+    static final int _mField = 0, _mType = 1,          //# Element positions in a metaRows row.
+        _mSrcCol = 2, _mSrcTab = 3, _mKeyInd = 4,
+        _mSystem = 5, _mStatus = 6, _mWidth = 7;
+    static int metaCacheMinutes = 0;                   //# -M option. Minutes the local meta-data cache file stays valid. 0 = no cache.
 
     //# Source database stuff.
     static Connection sourceJdbcConn = null;       // Source DB connection reference.
@@ -364,6 +583,11 @@ public class Metaqa {
     static String targetDBase = "dwh";             // Depricated. Replaced by JDBC URL.
     static String targetDateFormat = "yyyy-MM-dd"; // All target date columns will try this first.
     static String tempTargetTabSqlFile = "";
+    static int loadBatchSize = 1000;               //# -B option. Rows per batch and commit in do_load_sql().
+    static int unloadFetchSize = 10000;            //# Rows per round trip in do_unload_sql().
+    static int unloadThreads = 1;                  //# -U option. Parallel key ranges in do_unload_sql().
+    static String unloadKeyColumn = null;          //# -U option. The numeric column to split the ranges on.
+    static final String lineSeparator = System.getProperty("line.separator");
 
 /**
  * @param args . Refer to the Usage() method.
@@ -374,6 +598,7 @@ public static void main(String[] args) {   //Top level of program flow.
 
     // Record command line arguments in global structures.
     _num_args = args.length;
+    ar = new String[_num_args + 2];
     for (int i = 0; i < _num_args; i++) {
         ar[i + 1] = args[i];
     }
@@ -383,13 +608,22 @@ public static void main(String[] args) {   //Top level of program flow.
      **/
     try {
         prepare_meta_qa();
-        if (sqlInput) {             //# Choose a Main Program Loop.
+        start_progress_timer();
+        if (targetFileName != null) {
+            main_loop_file_merge();
+        } else if (inDatabaseDiff && main_loop_in_database()) {
+            // Done.
+        } else if (joinLookup && main_loop_joined()) {
+            // Done.
+        } else if (lookupThreads > 0 && main_loop_pipelined()) {
+            // Done.
+        } else if (sqlInput) {      //# Choose a Main Program Loop.
             main_loop_for_sql();
         } else {
             main_loop_for_file();
         } //end if
 
-        if (reverseCompare) {
+        if (reverseCompare && !reverseCompareDone) {
             reverse_compare();
         } //end if
         end_main();
@@ -405,8 +639,12 @@ public static void main(String[] args) {   //Top level of program flow.
             if (sqlInput) {
                 sourceJdbcConn.close();
             }
-            targetJdbcConn.close();
-            metaJdbcConn.close();
+            if (targetJdbcConn != null) {       //# Not connected with -F.
+                targetJdbcConn.close();
+            }
+            if (metaJdbcConn != null) {         //# Not connected when the meta-data came from the cache.
+                metaJdbcConn.close();
+            }
             System.exit(0);
         } catch (SQLException e) {
             System.out.println("Error 128: main(): SQLException ErrCode: "
@@ -495,6 +733,7 @@ public static void commandline_meta_qa() {
             //e.printStackTrace();
         }
     }
+    if (is_param("-N")) { pastMaxErr = true; }
     if (is_param("-m")) {
         try {
             _max_err = Integer.parseInt(get_param("-m"));
@@ -508,6 +747,168 @@ public static void commandline_meta_qa() {
             //e.printStackTrace();
         }
     }
+    if (is_param("-B")) {
+        try {
+            loadBatchSize = Integer.parseInt(get_param("-B"));
+        } catch (NumberFormatException e) {
+            usage();
+            System.out.println("-B refers to non numeric data: " + get_param("-B"));
+            System.out.println("Try changing like: -B 1000");
+            System.exit(5);
+        }
+        if (loadBatchSize < 1) {
+            loadBatchSize = 1;
+        } //end if
+    }
+    if (is_param("-R")) {
+        try {
+            progressSeconds = Integer.parseInt(get_param("-R"));
+        } catch (NumberFormatException e) {
+            usage();
+            System.out.println("-R needs the seconds between progress lines: "+get_param("-R"));
+            System.out.println("Try changing like: -R 30");
+            System.exit(5);
+        }
+    }
+    if (is_param("-C")) { countSourceRows = true; }
+    if (is_param("-L")) {
+        String[] par = get_param("-L").split(" ");
+        try {
+            lookupThreads = Integer.parseInt(par[0]);
+            virtualLookups = (par.length > 1 && par[1].toLowerCase().startsWith("v"));
+        } catch (NumberFormatException e) {
+            usage();
+            System.out.println("-L needs the number of target lookup connections: "+get_param("-L"));
+            System.out.println("Try changing like: -L 4 or -L 32 virtual");
+            System.exit(5);
+        }
+    }
+    if (is_param("-O")) { keepRowOrder = true; }
+    if (is_param("-J")) { joinLookup = true; }
+    if (is_param("-Q")) { inDatabaseDiff = true; }
+    if (is_param("-K")) { snapshotFileName = get_param("-K"); }
+    if (is_param("-F")) {
+        String[] par = get_param("-F").split(" ");
+        targetFileName = par[0];
+        try {
+            sortRunRows = (par.length > 1 ? Integer.parseInt(par[1]) : sortRunRows);
+        } catch (NumberFormatException e) {
+            sortRunRows = 0;
+        }
+        if (targetFileName.equals("") || sortRunRows < 1) {
+            usage();
+            System.out.println("-F needs the TARGET data-file and optionally the rows per sort run: "
+                + get_param("-F"));
+            System.out.println("Try changing like: -F target.unl or -F target.unl 500000");
+            System.exit(5);
+        } //end if
+    }
+    if (is_param("-A")) {
+        auditColumns = get_param("-A").replaceAll(" ", "");
+        String regex = "";
+        for (String name : auditColumns.split(",")) {
+            if (!name.equals("")) {
+                regex += (regex.equals("") ? "" : "|")+"(?:"+name+")";
+            } //end if
+        } //end for
+        try {
+            auditColumnPattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+        } catch (PatternSyntaxException e) {
+            usage();
+            System.out.println("-A needs column names or regular expressions: "+e.getMessage());
+            System.out.println("Try changing like: -A sales,cost or -A 'sales_.*,cost'");
+            System.exit(5);
+        }
+    }
+    if (is_param("-S")) {
+        String[] par = get_param("-S").split(" ");
+        try {
+            samplePercent = Double.parseDouble(par[0]);
+            sampleSeed = (par.length > 1 ? Long.parseLong(par[1]) : 0);
+        } catch (NumberFormatException e) {
+            samplePercent = -1;
+        }
+        if (samplePercent <= 0 || samplePercent > 100) {
+            usage();
+            System.out.println("-S needs the percentage of keys to audit: "+get_param("-S"));
+            System.out.println("Try changing like: -S 1 or -S 0.5 42");
+            System.exit(5);
+        } //end if
+        sampleBound = (int) Math.round(samplePercent * sampleSpace / 100);
+    }
+    if (is_param("-P")) {
+        metricsFileName = get_param("-P");
+        metricsOn = !metricsFileName.equals("");
+    }
+    if (is_param("-U")) {
+        String[] par = get_param("-U").split(" ");
+        try {
+            unloadThreads = Integer.parseInt(par[0]);
+            unloadKeyColumn = par[1];
+        } catch (Exception e) {
+            usage();
+            System.out.println("-U needs a number of parallel unloads and a numeric column: "
+                + get_param("-U"));
+            System.out.println("Try changing like: -U 4 order_no");
+            System.exit(5);
+        }
+    }
+    if (is_param("-W")) {
+        try {
+            sortWindow = Integer.parseInt(get_param("-W"));
+        } catch (NumberFormatException e) {
+            sortWindow = 0;
+        }
+        if (sortWindow < 1) {
+            usage();
+            System.out.println("-W needs the number of source rows to look up in key order: "
+                + get_param("-W"));
+            System.out.println("Try changing like: -W 5000");
+            System.exit(5);
+        } //end if
+    }
+    if (is_param("-X")) {
+        try {
+            cacheLimit = Long.parseLong(get_param("-X")) * 1048576;
+        } catch (NumberFormatException e) {
+            cacheLimit = 0;
+        }
+        if (cacheLimit <= 0) {
+            usage();
+            System.out.println("-X needs the megabytes of TARGET rows to cache: "+get_param("-X"));
+            System.out.println("Try changing like: -X 256");
+            System.exit(5);
+        } //end if
+        rowCache = new LinkedHashMap<String,String[]>(1024, 0.75f, true);
+    }
+    if (is_param("-E")) {
+        presenceOnly = true;
+        try {
+            presenceBatch = (get_param("-E").equals("") ? presenceBatch : Integer.parseInt(get_param("-E")));
+        } catch (NumberFormatException e) {
+            presenceBatch = 0;
+        }
+        if (presenceBatch < 1) {
+            usage();
+            System.out.println("-E takes the number of keys to look up per query: "+get_param("-E"));
+            System.out.println("Try changing like: -E or -E 200");
+            System.exit(5);
+        } //end if
+    }
+    if (is_param("-G")) {
+        profileColumns = true;
+        profileSkip = get_param("-G").equalsIgnoreCase("skip");
+    }
+    if (is_param("-M")) {
+        try {
+            metaCacheMinutes = Integer.parseInt(get_param("-M"));
+        } catch (NumberFormatException e) {
+            usage();
+            System.out.println("-M refers to non numeric data: " + get_param("-M"));
+            System.out.println("Try changing like: -M 720");
+            System.exit(5);
+        }
+    }
     if (is_param("-p")) {
         try {
             _progress_every = Integer.parseInt(get_param("-p"));
@@ -524,6 +925,53 @@ public static void commandline_meta_qa() {
     if (is_param("-k")) { inputKeyCols = get_param("-k"); }
     if (is_param("-n")) { numericStringsOn = false; }
     if (is_param("-r")) { reverseCompare = true; }
+    if (targetFileName != null) {
+        if (!colNamesInHeader || inputKeyCols == null
+            || inputFileName.toLowerCase().endsWith(".sql")) {
+            usage();
+            System.out.println("-F compares two flat files, so it needs an input-file with -H and -k.");
+            System.out.println("Try changing like: -i source.unl -H -k 1,2 -F target.unl");
+            System.exit(5);
+        } //end if
+        if (inDatabaseDiff || joinLookup || lookupThreads > 0 || snapshotFileName != null) {
+            System.out.println("Warning 179: -Q, -J, -L and -K are ignored with -F.");
+            inDatabaseDiff = joinLookup = false;
+            lookupThreads = 0;
+            snapshotFileName = null;
+        } //end if
+    } //end if
+    if (profileColumns && samplePercent > 0) {
+        System.out.println("Warning 177: -G is ignored with -S, which reads a sample of the source.");
+        profileColumns = profileSkip = false;
+    } //end if
+    if (presenceOnly) {
+        if (inDatabaseDiff) {
+            System.out.println("Warning 176: -Q is ignored with -E.");
+            inDatabaseDiff = false;
+        } //end if
+        if (sortWindow == 0 && targetFileName == null && !joinLookup && lookupThreads == 0) {
+            sortWindow = presenceBatch;                 //# The window holds a batch.
+        } //end if
+    } //end if
+    if (sortWindow > 0 && (targetFileName != null || inDatabaseDiff || joinLookup
+        || lookupThreads > 0)) {
+        System.out.println("Warning 172: -W is ignored with -F, -Q, -J and -L.");
+        sortWindow = 0;
+    } //end if
+    if (rowCache != null && (targetFileName != null || inDatabaseDiff || joinLookup
+        || lookupThreads > 0)) {
+        System.out.println("Warning 173: -X is ignored with -F, -Q, -J and -L.");
+        rowCache = null;
+    } //end if
+    if (inDatabaseDiff && samplePercent > 0) {
+        System.out.println("Warning 166: -Q is ignored with -S.");
+        inDatabaseDiff = false;
+    } //end if
+    if (reverseCompare && samplePercent > 0) {
+        System.out.println("Warning 157: -r is ignored with -S, because every TARGET row"+
+            " outside the sample would be reported missing.");
+        reverseCompare = false;
+    } //end if
     if (is_param("-s")) { sourceSystem = get_param("-s"); }
     if (is_param("-t")) { targetTable = get_param("-t"); }
     if (is_param("-u")) { userId = get_param("-u"); }
@@ -760,6 +1208,8 @@ System.out.println(
 +"\n          use a pipe delimited file, (denoted with the -i option),"
 +"\n          with a HEADER record containing the names of the TARGET columns"
 +"\n          (to be used in the process of generating the TARGET query)."
++"\n       iii) Use a pipe delimited file with a HEADER record as in ii), and"
++"\n          name the second file with the -F option. No dBase is used."
 +"\n"+centreLineOf(" End of more help for meta_qa ","-",80)
 );
 } //end function {  more_help()  }
@@ -774,11 +1224,71 @@ public static void usage() {
 
 System.out.println(
 //"Usage: java -jar metaqa.jar [-h] [-help] [-s src-sys] [-t table] [-i input-file] [-b] [-H [-k 1,2,3,...,n,]] [-n] [-v tolerance[%]] [-m max-errs] [-l line-err-max] [-p progress] [-u user-id] [-I interface-no] [-x ait-transaction-type] [-r] [-c file] [-Src SrcDbDriver SrcUrl SrcUserId SrcUserPasswd] [-Tgt TgtDbDriver TgtUrl TgtUserId TgtUserPasswd] [-Met MetDbDriver MetUrl MetUserId MetUserPasswd]"
-"Usage: java -jar metaqa.jar [-h [more]] [-help [more]] [-s src-sys] [-t table] [-i input-file] [-b] [-H [-k 1,2,3,...,n,]] [-v tolerance[%]] [-c file] [-n] [-r] [-f dateformat] [-m max-errs] [-l line-err-max] [-p progress] [-u user-id] [-I interface-no] [-x ait-transaction-type] [-Src SrcDbDriver SrcUrl SrcUserId SrcUserPasswd] [-Tgt TgtDbDriver TgtUrl TgtUserId TgtUserPasswd] [-Met MetDbDriver MetUrl MetUserId MetUserPasswd]"
+"Usage: java -jar metaqa.jar [-h [more]] [-help [more]] [-s src-sys] [-t table] [-i input-file] [-b] [-H [-k 1,2,3,...,n,]] [-v tolerance[%]] [-c file [-B batch-size] [-U threads column]] [-n] [-r] [-S percent [seed]] [-A col1,col2,...] [-f dateformat] [-m max-errs] [-l line-err-max] [-p progress] [-R seconds [-C]] [-L lookups [virtual] [-O]] [-J [-O]] [-Q] [-K snapshot-file] [-F target-file [run-rows]] [-W window-rows [-O]] [-X cache-megabytes] [-E [batch-keys]] [-G [skip]] [-N] [-M cache-minutes] [-P metrics-file] [-u user-id] [-I interface-no] [-x ait-transaction-type] [-Src SrcDbDriver SrcUrl SrcUserId SrcUserPasswd] [-Tgt TgtDbDriver TgtUrl TgtUserId TgtUserPasswd] [-Met MetDbDriver MetUrl MetUserId MetUserPasswd]"
 +"\n   -H                Get the column names from the input-file 'HEADER|'."
 +"\n   -I interface-no   The unique Meta Data Interface number."
++"\n   -L lookups        Read the source, look up the TARGET on <lookups>"
++"\n                     connections, compare and write the spreadsheet all at"
++"\n                     the same time. Not with a -c temp TARGET table."
++"\n   -L lookups virtual  Start each row's lookup on its own virtual thread."
++"\n                     Still at most <lookups> at a time, one per connection,"
++"\n                     so it only saves the cost of the threads, and only"
++"\n                     from Java 21. Before Java 21 it is the same as -L."
++"\n                     The JDBC driver must allow one thread per connection."
++"\n   -J                Join instead of a lookup per row. The source rows are"
++"\n                     loaded into a temp table on the TARGET dBase in -B"
++"\n                     batches and compared in one outer join, which with -r"
++"\n                     also finds the NoSource rows. Informix temp tables."
++"\n   -O                With -L, -J or -W, report the rows in the source order."
++"\n   -Q                With a .sql input-file on the TARGET dBase, let the"
++"\n                     dBase find the differing rows in one outer join and"
++"\n                     return only those. The Line No is then the differing"
++"\n                     row's number. Informix, Oracle, SQL Server and H2"
++"\n                     only, else each row is looked up. Not on an NLSCASE"
++"\n                     INSENSITIVE Informix database, nor with Oracle's"
++"\n                     NLS_COMP=LINGUISTIC, which hide case differences."
++"\n   -K snapshot-file  Look the rows up in a local snapshot of the TARGET"
++"\n                     columns instead of the TARGET dBase. If the file is"
++"\n                     not there, or of other columns, it is taken first,"
++"\n                     sorted by key, with a memory mapped index in"
++"\n                     <snapshot-file>.idx. Delete it to take a new one."
++"\n   -F target-file [run-rows]  Compare the -H input-file to a second pipe"
++"\n                     delimited file of the same columns, keyed by -k,"
++"\n                     without a dBase. Both are sorted by key in runs of"
++"\n                     <run-rows> (100000) lines, spilled to the temp"
++"\n                     directory, and merged. Not with -c, -Q, -J, -L or -K."
++"\n   -W window-rows    Read <window-rows> source rows, then look them up in"
++"\n                     key order, so the TARGET index is read in order"
++"\n                     rather than at random. Not with -F, -Q, -J or -L."
++"\n   -X cache-megabytes  Keep the TARGET rows looked up, and the keys not"
++"\n                     found, in a cache of about this size, dropping the"
++"\n                     least recently used, so a repeated source key is"
++"\n                     looked up once. Not with -F, -Q, -J or -L."
++"\n   -E [batch-keys]   Only report the Missing and, with -r, the NoSource"
++"\n                     keys. No other column is read or compared. The keys"
++"\n                     are looked up <batch-keys> (100) per query, in key"
++"\n                     order, except with -F, -J or -L. Not with -Q."
++"\n   -G [skip]         First profile each column of the source and TARGET"
++"\n                     in one query, or one pass of a file, each: the rows,"
++"\n                     values, sum, least and greatest. Report which columns"
++"\n                     reconcile; character columns by their counts only."
++"\n                     With skip, do not audit the exact numeric columns"
++"\n                     that do row by row. Not with -S."
++"\n   -M cache-minutes  Keep the TARGET table's meta data in a local file"
++"\n                     '<table>.meta_qa.cache' and reuse it for this many"
++"\n                     minutes, without connecting to the meta-data dBase."
++"\n   -P metrics-file   Write the time spent in each phase, row counts and a"
++"\n                     target lookup latency histogram to <metrics-file> with"
++"\n                     each progress line and at the end. JSON if it is named"
++"\n                     '*.json', else Prometheus text format."
 +"\n   -T target-system  Defaults to DWH and is a Pkey element for the user"
 +"\n                     defined meta data table META_DWH_TABLE_FIELD index."
++"\n   -B batch-size     Rows inserted per batch and commit by the SQL 'load'"
++"\n                     statement in -c and -i .SQL files, and by -J."
++"\n                     Defaults to 1000."
++"\n   -U threads column Run each SQL 'unload' statement as <threads> parallel"
++"\n                     queries on key ranges of the numeric <column>. The"
++"\n                     unload file is gzipped if its name ends in '.gz'."
 +"\n   -V                Prints the meta_qa version number only."
 +"\n   -b                Batch mode only. Bypasses the user interface."
 +"\n   -c sql-file.sql   Create and load a temp TARGET table from a .SQL file."
@@ -804,9 +1314,26 @@ System.out.println(
 +"\n                     NB. Specify -H if -k is used with a delimited file."
 +"\n   -l line-err-max   Defaults to 20000 lines of errors."
 +"\n   -m max-errs       Defaults to 20000 errors in total."
++"\n   -N                At -m max-errs, stop writing the differences but"
++"\n                     audit on, for the summary of them by column."
 +"\n   -n                Don't treat numeric text as numbers.(Eg. 1!=0001)."
 +"\n   -p progress       Show progress after every 500? number of input lines."
++"\n   -R seconds        Show progress every <seconds> instead, with rows/s,"
++"\n                     percentage done, ETA and target lookup latency."
++"\n   -C                With -R and a .sql input-file, count the source rows"
++"\n                     first, to show the percentage done."
 +"\n   -r                Also reverse compare from TARGET to SOURCE."
++"\n   -S percent [seed] Audit only about <percent> of the keys, picked by a hash"
++"\n                     of the key, or with a .sql input-file and a numeric"
++"\n                     first key by a mod(key) in the source query, which"
++"\n                     picks other keys. Rerun with the same seed and the"
++"\n                     same input-file to audit the same keys. Ends with"
++"\n                     each column's estimated error rate and 95%"
++"\n                     confidence interval."
++"\n   -A col1,col2,...  Audit only these columns and the keys. Each one is a"
++"\n                     column name or a regular expression, in any case."
++"\n                     The other columns are not fetched from TARGET, not"
++"\n                     parsed from the input-file and not compared."
 +"\n   -s source-system  Defaults to MP. and is a key in the user defined"
 +"\n                     meta data table META_DWH_TABLE_FIELD."
 +"\n   -t target-table   Defaults to MP_CHAIN_SUBCLASS_SN and is a key in the"
@@ -832,7 +1359,7 @@ System.out.println(
 +"\n      MetUserId      The meta-data JDBC User Id."   +" Defaults to: "+metaJdbcUserId
 +"\n      MetUserPasswd  The meta-data JDBC User Password. Defaults to: "+metaJdbcPassword
 +"\n"
-+"\n  Other limits: keys="+maxKeys+"; Columns="+siz+"; Errors=2147483647;"
++"\n  Other limits: keys and Columns as many as the table has; Errors=2147483647;"
 +"\n                Line-errors=2147483647"
 );
 } //end function {  usage()  }
@@ -852,7 +1379,9 @@ public static void reverse_compare() {
     try {
         System.out.println(DateUtils.now("HH:mm:ss")+         //# "yyyy-MM-dd HH:mm:ss"
                 " Reverse compare started.");
+        long t0 = metric_start();
         reverseCursor = reversePrepedQuery.executeQuery();    //# On targetJdbcConn<ection>
+        _roundTrips++;
         while (reverseCursor.next()) {
             //# Report missing from source.
             _missingRowsInReverseCompare++ ;
@@ -864,6 +1393,7 @@ public static void reverse_compare() {
             spreadSheet.println( str );
             max_err_exit();
         } //end while
+        metric_stop(_pReverseQuery, t0);
         System.out.println( DateUtils.now( "HH:mm:ss")+       //# Not "yyyy-MM-dd HH:mm:ss"
                 " Reverse compare ended." );
     } catch (SQLException e) {
@@ -887,23 +1417,138 @@ public static void reverse_compare() {
  */
 public static String read_flat_file_line_into_array() {
     String sourceLine = null;
+    long t0 = metric_start();
     try {
         sourceLine = flat_input_file.readLine();
         if (sourceLine == null){
             return sourceLine;
         }
-        String[] inField = sourceLine.trim().split("[|]",-2);
-        src_field_count = inField.length;
-        for (int i=src_field_count;i>=1;i--) {
-            s[i]=inField[i-1];      // Ripple the array to start at index 1.
-        } // end for
+        src_field_count = split_flat_line(sourceLine, s); //# Into s[1..], as the array starts at index 1.
+        if (src_field_count >= s.length) {      //# A wider line than the table.
+            array_boundary( src_field_count );
+            split_flat_line(sourceLine, s);
+        } //end if
     } catch (IOException e) {
         System.out.println( "Error 105: read_flat_file_line_into_array(): "+e);
     }
+    metric_stop(_pRead, t0);
     return sourceLine;
 } //end function read_flat_file_line_into_array()
 
 
+/**
+##########################################################
+# Purpose: Split a flat-file line on '|' into into[1..n],
+#          as line.trim().split("[|]",-2) did, but without
+#          the regex, the list and the array per line.
+# Returns: n, the field count. Fields beyond the end of
+#          <into> are counted, not kept, and -A skipped ones
+#          are left null. <into> may be null.
+##########################################################
+ *
+ * @param line
+ * @param into
+ * @return
+ */
+public static int split_flat_line(String line, String[] into) { //function split_flat_line(line, into)
+    int from = 0, to = line.length();
+    boolean every = line.startsWith("TRAILER|");         //# Else not the -A skipped columns.
+    while (from < to && line.charAt(from) <= ' ') {      //# The same as trim().
+        from++;
+    } //end while
+    while (to > from && line.charAt(to-1) <= ' ') {
+        to--;
+    } //end while
+    int n = 0;
+    for (int at = from; ; ) {
+        int bar = line.indexOf('|', at);
+        if (bar < 0 || bar > to) {
+            bar = to;
+        } //end if
+        n++;
+        if (into != null && n < into.length) {
+            into[n] = (every || n >= columnSkipped.length || !columnSkipped[n]
+                ? line.substring(at, bar) : null);
+        } //end if
+        if (bar == to) {
+            break; // for
+        } //end if
+        at = bar + 1;
+    } //end for
+    return n;
+} //end function { split_flat_line() }
+
+
+/**
+##########################################################
+# Purpose: a.trim().equals(b.trim()) without the trimmed
+#          copies, which CHAR(n) padded values made per cell.
+##########################################################
+ *
+ * @param a
+ * @param b
+ * @return
+ */
+public static boolean trimmed_equals(String a, String b) { //function trimmed_equals(a, b)
+    int af = 0, at = a.length(), bf = 0, bt = b.length();
+    while (af < at && a.charAt(af) <= ' ') { af++; }
+    while (at > af && a.charAt(at-1) <= ' ') { at--; }
+    while (bf < bt && b.charAt(bf) <= ' ') { bf++; }
+    while (bt > bf && b.charAt(bt-1) <= ' ') { bt--; }
+    return (at - af == bt - bf) && a.regionMatches(af, b, bf, at - af);
+} //end function { trimmed_equals() }
+
+
+/**
+##########################################################
+# Purpose: s.trim().equals("") without the trimmed copy.
+##########################################################
+ *
+ * @param s
+ * @return
+ */
+public static boolean is_blank(String s) { //function is_blank(s)
+    for (int k=0; k<s.length(); k++) {
+        if (s.charAt(k) > ' ') {
+            return false;
+        } //end if
+    } //end for
+    return true;
+} //end function { is_blank() }
+
+
+/**
+##########################################################
+# Purpose: s.matches("[ ][ ]*") without the regex.
+##########################################################
+ *
+ * @param s
+ * @return
+ */
+public static boolean all_spaces(String s) { //function all_spaces(s)
+    for (int k=0; k<s.length(); k++) {
+        if (s.charAt(k) != ' ') {
+            return false;
+        } //end if
+    } //end for
+    return s.length() > 0;
+} //end function { all_spaces() }
+
+
+/**
+##########################################################
+# Purpose: Is <ch> one that the regex "." does not match?
+#          The old regex tests depended on this.
+##########################################################
+ *
+ * @param ch
+ * @return
+ */
+public static boolean is_line_terminator(char ch) { //function is_line_terminator(ch)
+    return ch == '\n' || ch == '\r' || ch == '\u0085' || ch == '\u2028' || ch == '\u2029';
+} //end function { is_line_terminator() }
+
+
 /**
 ##########################################################
 # Purpose: Drive the main program loop for input file reading.
@@ -954,11 +1599,25 @@ public static void main_loop_for_file() { //function main_loop_for_file()
                 p[i] = s[key_pos[i]];     //###MB### If the field is a key and == null???;
             } //end for
 
+            //# Audit only the keys in the -S sample.
+            if (samplePercent > 0 && !in_sample(p, _key_count)) {
+                dataLine = progress_check_and_read();
+                continue; // while
+            } //end if
+            _rowsAudited++;
+
             //# Record the unique key of every line from the file in a temp table.
             if (reverseCompare) {
                 save_key_for_reverse_compare(_key_count);
             } //end if
 
+            //# Look the rows up a -W window at a time.
+            if (sortWindow > 0) {
+                window_add();
+                dataLine = read_flat_file_line_into_array();
+                continue; // while
+            } //end if
+
             //# Do the lookup into the target table.
             if ((! open_cursor_with( _key_count ))) {
                 dataLine = progress_check_and_read();
@@ -976,28 +1635,106 @@ public static void main_loop_for_file() { //function main_loop_for_file()
 
             //# Compare corresponding SOURCE and TARGET columns.
             min =  (src_field_count<tgt_col_count ? src_field_count : tgt_col_count );
-            for (int i=1; i<=min; i++) {
-                if (isKeyColumn[i]) {                //# Skip over key elements.
-                    continue; // continue for         //Note: Performance can be improved here by implementing a hashmap to columns that need to be audited.
-                } //end if
-                if ( c[i].equals("\"\"") ||  c[i].equals("''")  ) {   //# Skip over null named columns.
-                    continue; // continue for
-                } //end if
-                _nonKeyColsAudited++;
-                switch (_comparisonType[i]) {
-                    case _numeric   : numeric_diff(i); break;
-                    case _date      : date_diff(i);    break;
-                    case _character : clever_diff(i);  break;
-                } // end switch
-            } //end for
+            compare_audited_columns(min);
             dataLine = progress_check_and_read();
         } //end while
+        window_flush();                 //# The last -W window.
     } catch (Exception e) {
         System.out.println( "Error 74: main_loop_for_file(): "+e);
     } finally { }
 } //end function { main_loop_for_file() }
 
 
+/**
+##########################################################
+# Purpose: Compare corresponding SOURCE and TARGET columns
+#          of the current row, using the column plan.
+##########################################################
+ *
+ * @param min The lowest of the source and target column counts.
+ */
+public static void compare_audited_columns(int min) { //function compare_audited_columns(min)
+    if (auditColCount < 0) {
+        build_audit_plan();                  //# Once per run, after the data types are primed.
+    } //end if
+    for (int k=0; k<auditColCount; k++) {
+        int i = auditCol[k];
+        if (i > min) {
+            break; // for                    //# The plan is in column order, so the rest are beyond this row.
+        } //end if
+        _nonKeyColsAudited++;
+        if (metricsOn) {
+            int phase = (_comparisonType[i] == _numeric ? _pDiffNumeric
+                       : _comparisonType[i] == _date    ? _pDiffDate
+                       :                                  _pDiffCharacter);
+            long t0 = System.nanoTime();
+            auditDiff[k].diff(i);
+            metric_stop(phase, t0);
+        } else {
+            auditDiff[k].diff(i);
+        } //end if
+    } //end for
+} //end function { compare_audited_columns() }
+
+
+/**
+##########################################################
+# Purpose: Build the column plan, ie. the columns that need
+#          to be audited, each with its diff function.
+#          Key elements and null named columns are left out,
+#          so the main loops no longer skip them on every row.
+# Note   : Call it again (or set auditColCount to -1) when
+#          a column's _comparisonType[] changes.
+##########################################################
+**/
+public static void build_audit_plan() { //function build_audit_plan()
+    int k = 0;
+    for (int i=1; i<=tgt_col_count && i<c.length; i++) {
+        if (isKeyColumn[i] || columnSkipped[i]) { //# Skip over key elements and -A skipped ones.
+            continue; // for
+        } //end if
+        if (c[i] == null || c[i].equals("''") || c[i].equals("\"\"")) {
+            continue; // for                 //# Skip over null named columns.
+        } //end if
+        auditCol[k]  = i;
+        auditDiff[k] = diff_for_type(_comparisonType[i]);
+        k++;
+    } //end for
+    auditColCount = k;
+} //end function { build_audit_plan() }
+
+
+/**
+##########################################################
+# Purpose: Choose the diff function for a comparison type.
+##########################################################
+ *
+ * @param type_ One of: _numeric; _character; or _date.
+ * @return
+ */
+public static ColumnDiff diff_for_type(char type_) { //function diff_for_type(type_)
+    switch (type_) {
+        case _numeric   : return numericDiff;
+        case _date      : return dateDiff;
+        case _character : return cleverDiff;
+        default         : return noDiff;      //# Not primed, so counted but not compared.
+    } // end switch
+} //end function { diff_for_type() }
+
+static final ColumnDiff numericDiff = new ColumnDiff() {
+    public void diff(int i) { numeric_diff(i); }
+};
+static final ColumnDiff dateDiff = new ColumnDiff() {
+    public void diff(int i) { date_diff(i); }
+};
+static final ColumnDiff cleverDiff = new ColumnDiff() {
+    public void diff(int i) { clever_diff(i); }
+};
+static final ColumnDiff noDiff = new ColumnDiff() {
+    public void diff(int i) { }
+};
+
+
 /**
 ##########################################################
 # Purpose: Do an alpha-numeric comparison.
@@ -1014,13 +1751,13 @@ public static void character_diff(int i) { //function character_diff()
         if (isNullDiff(i)) {                       //# Handle null/empty string combinations.
             return;
         }
-        if (!(t[i].trim().equals(s[i].trim()))) {  //# They are simply different.
+        if (!trimmed_equals(t[i], s[i])) {         //# They are simply different.
             report_inequality( i );
             return;
         } //end if
-        if (t[i].matches("[ ][ ]*") &              //# Both are full
-            s[i].matches("[ ][ ]*") &              //# of spaces and
-            t[i].length() != s[i].length()         //# different lengths.
+        if (t[i].length() != s[i].length() &&      //# Different lengths and
+            all_spaces(t[i]) &&                    //# both are full
+            all_spaces(s[i])                       //# of spaces.
         ) {
             report_inequality( i );
             return;
@@ -1047,8 +1784,12 @@ public static void character_diff(int i) { //function character_diff()
 ##########################################################
 **/
 public static void primeTheSourceColumnDataTypes() {
+    long t0 = metric_start();
     try {
         for (int i=1; i<=tgt_col_count; i++) {
+            if (columnSkipped[i]) {
+                continue; // for
+            } //end if
             if (is_date( s[i] ) || c[i].matches(".*[Dd][Aa][Tt][Ee].*")) {
                 dFmtS[i] = guessed_date_format(s[i]);
                 _comparisonType[i] = _date;
@@ -1061,6 +1802,10 @@ public static void primeTheSourceColumnDataTypes() {
     } catch (java.lang.ArrayIndexOutOfBoundsException e) {
         // Do nothing.
     }
+    metric_stop(_pPrime, t0);
+    Arrays.fill(dateTextT, null);        //# The date formats may have changed.
+    Arrays.fill(dateTextS, null);
+    auditColCount = -1;                  //# The column plan follows the data types.
     return;
 } //end function primeTheSourceColumnDataTypes()
 
@@ -1077,6 +1822,7 @@ public static void primeTheSourceColumnDataTypes() {
 ##########################################################
 **/
 public static void primeTheTargetColumnDataTypes() {
+    long t0 = metric_start();
     SimpleDateFormat theGuessedDate_format = null;
     String theGuessDateString = "";
     String theGuessedName = "";
@@ -1084,6 +1830,9 @@ public static void primeTheTargetColumnDataTypes() {
     int    i=0;
     try {
         for (i=1; i<=tgt_col_count; i++) {
+            if (columnSkipped[i]) {
+                continue; // for
+            } //end if
             //# The last format found will apply to all TARGET dates. @todo use JDBC meta-data.
             if (c[i].matches(".*[Dd][Aa][Tt][Ee].*")) {
                 _comparisonType[i] = _date;
@@ -1134,6 +1883,10 @@ public static void primeTheTargetColumnDataTypes() {
     } catch (java.lang.ArrayIndexOutOfBoundsException e) {
         // Do nothing.
     }
+    metric_stop(_pPrime, t0);
+    Arrays.fill(dateTextT, null);        //# The date formats may have changed.
+    Arrays.fill(dateTextS, null);
+    auditColCount = -1;                  //# The column plan follows the data types.
     return;
 } //end function primeTheTargetColumnDataTypes()
 
@@ -1155,8 +1908,24 @@ boolean b = false;
         if (d == null || d.equals("")) { //Evaluste from left to right and exit early.
             return false;
         }
-        //# This is probably a date if it passes this test.
-        b = d.matches(".*[0-9][0-9][-/][0-9][0-9][-/][0-9][0-9].*");
+        //# This is probably a date if it passes this test, once the regex:
+        //# ".*[0-9][0-9][-/][0-9][0-9][-/][0-9][0-9].*" which has no line terminators.
+        int len = d.length();
+        for (int k=0; k<len; k++) {
+            if (is_line_terminator(d.charAt(k))) {
+                return false;
+            } //end if
+        } //end for
+        for (int k=0; k+8<=len && !b; k++) {
+            b = (d.charAt(k)   >= '0' && d.charAt(k)   <= '9') &&
+                (d.charAt(k+1) >= '0' && d.charAt(k+1) <= '9') &&
+                (d.charAt(k+2) == '-' || d.charAt(k+2) == '/') &&
+                (d.charAt(k+3) >= '0' && d.charAt(k+3) <= '9') &&
+                (d.charAt(k+4) >= '0' && d.charAt(k+4) <= '9') &&
+                (d.charAt(k+5) == '-' || d.charAt(k+5) == '/') &&
+                (d.charAt(k+6) >= '0' && d.charAt(k+6) <= '9') &&
+                (d.charAt(k+7) >= '0' && d.charAt(k+7) <= '9');
+        } //end for
     } catch (Exception e) {
         if (! suppressWarnings) {
             System.out.println(" Warning 337: "+e);
@@ -1350,6 +2119,7 @@ public static void date_diff(int i) { //function date_diff()
                 System.out.println(" Warning 125: Unrecognisable date format: "+
                     s[i]+ " Line: "+_rowsChecked+" Column: "+i+" Treating it as character data.");
                 _comparisonType[i] = _character; //# From this point on treat the column as character data.
+                build_audit_plan();              //# Same columns, so safe from inside the compare loop.
                 character_diff( i );
                 return;
                 }
@@ -1357,9 +2127,15 @@ public static void date_diff(int i) { //function date_diff()
 //    try {
 //    } catch (Exception e) {
 //    } //end catch
-            Date dx = dFmtT.parse(t[i]);         //# Convert based on the
-            Date dy = dFmtS[i].parse(s[i]);      //# pre-determined date-format.
-            if ( dx.compareTo(dy) != 0 ) {       //# The dates differ?
+            if (!t[i].equals(dateTextT[i])) {    //# Convert based on the
+                dateMillisT[i] = dFmtT.parse(t[i]).getTime();
+                dateTextT[i] = t[i];
+            } //end if
+            if (!s[i].equals(dateTextS[i])) {    //# pre-determined date-format.
+                dateMillisS[i] = dFmtS[i].parse(s[i]).getTime();
+                dateTextS[i] = s[i];
+            } //end if
+            if ( dateMillisT[i] != dateMillisS[i] ) { //# The dates differ?
                     report_inequality( i );
             } //end if
         } //end if
@@ -1403,6 +2179,8 @@ public static void numeric_diff(int i) {
 try {
     if (isNullDiff(i)) {
         // isNulldiff() caters for null and empty string combinations.
+    } else if (trimmed_equals(t[i], s[i])) {
+        // The same text is the same number, without making two BigDecimals.
     } else {
         x = new BigDecimal(t[i].trim());       //# First convert to numeric.
         y = new BigDecimal(s[i].trim());       //# First convert to numeric.
@@ -1444,7 +2222,7 @@ public static boolean isNullDiff(int i) {
     try { //# Cater for null and empty string combinations.
         if (t[i] == null & s[i] == null)    return true;
         if (t[i] != null & s[i] == null) {
-            if (t[i].trim().equals("")) {   //# Spaces are considered as null
+            if (is_blank(t[i])) {           //# Spaces are considered as null
                 return true;                //# Because we consider null and "" equal.
             } else {
                 report_inequality( i );
@@ -1452,7 +2230,7 @@ public static boolean isNullDiff(int i) {
             }
         }
         if (t[i] == null & s[i] != null) {
-            if (s[i].trim().equals("")) {
+            if (is_blank(s[i])) {
                 return true;          //# Because we consider null and "" equal.
             } else {
                 report_inequality( i );
@@ -1501,10 +2279,7 @@ public static void main_loop_for_sql() { //function main_loop_for_sql()
                 " Reading source database cursor...");
 //      i=sourceCursor.getRow();
 //      sourceCursor.setFetchSize(1024);
-        while (sourceCursor.next()) {                           //# Main read loop for a source query.
-            for (int i=1; i<=tgt_col_count; i++) {              //# The key from source. Prefer the empty sting to null.
-                s[i] = (sourceCursor.getString(i) != null ? sourceCursor.getString(i) : "") ;
-            } //end for
+        while (read_source_row()) {                             //# Main read loop for a source query.
 
             //# Initialise error indicator for this input row.
             lineHasErr = false;
@@ -1525,11 +2300,24 @@ public static void main_loop_for_sql() { //function main_loop_for_sql()
                 p[i] = s[key_pos[i]];
             } //end for
 
+            //# Audit only the keys in the -S sample.
+            if (samplePercent > 0 && !samplePushedDown && !in_sample(p, _key_count)) {
+                general_progress_check();
+                continue; // while
+            } //end if
+            _rowsAudited++;
+
             //# Record the unique key of every line from the file in a temp table.
             if (reverseCompare) {
                 save_key_for_reverse_compare(_key_count);
             } //end if
 
+            //# Look the rows up a -W window at a time.
+            if (sortWindow > 0) {
+                window_add();
+                continue; // while
+            } //end if
+
             //# Do the lookup into the target table.
             if (! open_cursor_with( _key_count )) {  //@TODO Looks like a problem.
                 general_progress_check();
@@ -1545,23 +2333,11 @@ public static void main_loop_for_sql() { //function main_loop_for_sql()
             }
             //# Compare corresponding SOURCE and TARGET columns.
             int min = (src_field_count >tgt_col_count ? tgt_col_count : src_field_count ); //Get the lowest field count
-            for (int i=1; i<=min; i++) {
-                if (isKeyColumn[i]) {                  //# Skip over key elements.
-                    continue; // for          //Note: Performance can be improved here by implementing a hashmap to columns that need to be audited.
-                } //end if
-                if (c[i].equals("''") || c[i].equals("\"\"")  ) {
-                    continue; // for  //# Skip over null named columns. # http://java.sun.com/docs/books/jls/second_edition/html/lexical.doc.html
-                } //end if
-                _nonKeyColsAudited++;
-                switch (_comparisonType[i]) {
-                        case _numeric   : numeric_diff(i); break;
-                        case _date      : date_diff(i );   break;
-                        case _character : clever_diff(i);  break;
-                } // end switch
-            } //end for
+            compare_audited_columns(min);
             general_progress_check();
 
         } //end while //############### END of SQL Main Program Loop ###########
+        window_flush();                 //# The last -W window.
     } catch (SQLException e) {
         System.out.println(
             "Error 121: main_loop_for_sql(): SQLException ErrCode: "
@@ -1576,84 +2352,1821 @@ public static void main_loop_for_sql() { //function main_loop_for_sql()
 
 /**
 ##########################################################
-# Purpose: Just a place to keep this unweildy peice of 4GL code.
-#          Array t used to minimize the mess.
+# Purpose: Fetch the next source cursor row into s[].
+# Returns: False at the end of the cursor.
 ##########################################################
  *
- * @param inputLine
  * @return
+ * @throws java.sql.SQLException
  */
-public static boolean fetch_keyed_row(String inputLine) {
-    int i;
-    try { //whenever error do_nothing;
-        if (targetCursor.next() == false) {
-            return false;
-        }
-        for (i=1; i<=tgt_col_count; i++) {
-            t[i] = targetCursor.getString(i); //# Fetch the target Cursor into the t array.
-        } //end for
-    } catch (SQLException e) {
-        System.out.println(
-            "Warning 4: SQLException ErrCode: SQLException ErrCode: "
-            +e.getErrorCode()+": "+e+
-            " Database fetch of input line no: "+ _rowsChecked
-            );
-        if (inputLine == null) {
-            inputLine = "" ;
-            for (i=1; i<=tgt_col_count; i++) {
-                inputLine += s[i]+"|";       //# Reassemble the input line.
-            } //end for
-        } //end if
-        System.out.println("Bad line: "+inputLine);
-        //throw e;
+public static boolean read_source_row() throws SQLException { //function read_source_row()
+    long t0 = metric_start();
+    if (!sourceCursor.next()) {
         return false;
-    } catch (Exception e) {
-        System.out.println( "Error 78: fetch_keyed_row(): "+e);
-        //e.printStackTrace();
-        System.exit(78);
-    } finally { } //whenever error stop
+    } //end if
+    for (int i=1; i<=tgt_col_count; i++) {              //# The key from source. Prefer the empty sting to null.
+        if (columnSkipped[i]) {
+            continue; // for
+        } //end if
+        String v = sourceCursor.getString(i);           //# Once, as each call makes a new String.
+        s[i] = (v != null ? v : "");
+    } //end for
+    metric_stop(_pRead, t0);
     return true;
-
-} //end function {  fetch_keyed_row()  }
+} //end function { read_source_row() }
 
 
 /**
 ##########################################################
-# Purpose: Report the missing rows from TARGET.
+# Purpose: The -W option. Keep the current source row for
+#          the window's lookups, and do them when it is full.
 ##########################################################
- *
- * @param aReason
- * @param f
- */
-public static void report_missing(String aReason ,SQLException f ) {
-    lineHasErr = true;                          //# Set the indicator.
-    String sheetLine ="";
-    for (int i=1; i<=_key_count; i++) {         //# The key from source.
-        sheetLine +=  s[key_pos[i]]+ "\t";
-    } //end for
-    try {
-        spreadSheet.println(
-            sheetLine.trim()+"\t"+aReason.trim()+" "+f+"\t\t\t"+_rowsChecked);
-    } catch (Exception e) {
-        System.out.println( "Error 300: report_missing(): "+e);
-        //e.printStackTrace();
-        System.exit(300);
-    }
-    max_err_exit();
-} //end function {  report_missing()  }
+**/
+public static void window_add() { //function window_add()
+    PipelineRow row = new PipelineRow();
+    row.rowNo = _rowsChecked;
+    row.fields = src_field_count;
+    row.src = Arrays.copyOf(s, Math.min(s.length, Math.max(src_field_count, tgt_col_count) + 1));
+    window.add(row);
+    if (window.size() >= sortWindow) {
+        window_flush();
+    } //end if
+} //end function { window_add() }
 
 
 /**
 ##########################################################
-# Purpose: Optionally treat text codes as numbers rather
-#     than as strings in order to determine a difference.
-// Even if it't character data, check if it is numeric.
+# Purpose: The -W option. Look up the rows in the window in
+#          key order, as the TARGET dBase orders the keys,
+#          so that its index and data pages are read in order
+#          rather than at random. With -E a batch of keys at a
+#          time. Then compare them in key order, or with -O in
+#          the source order.
 ##########################################################
- *
- * @param i
- */
-public static void clever_diff(int i) { //function clever_diff()
-    try {
+**/
+public static void window_flush() { //function window_flush()
+    final int n = window.size();
+    if (n == 0) {
+        return;
+    } //end if
+    int rowsRead = _rowsChecked;                        //# Each row restores its own row number.
+    boolean[] numeric = new boolean[_key_count];
+    for (int i=1; i<=_key_count; i++) {
+        String bind = key_bind_name(keyJdbcType[i]);
+        numeric[i-1] = bind.equals("integer") || bind.equals("number");
+    } //end for
+    final Object[][] keys = new Object[n][];
+    Integer[] order = new Integer[n];
+    String[] key = new String[_key_count];
+    for (int k=0; k<n; k++) {
+        String[] src = window.get(k).src;
+        for (int i=1; i<=_key_count; i++) {
+            key[i-1] = src[key_pos[i]];
+        } //end for
+        keys[k] = ExternalSort.sort_key(key, numeric);
+        order[k] = k;
+    } //end for
+    Arrays.sort(order, new Comparator<Integer>() {     //# Stable, so equal keys stay in source order.
+        public int compare(Integer a, Integer b) {
+            return ExternalSort.compare_keys(keys[a], keys[b]);
+        }
+    });
+    //# The lookups, in key order.
+    boolean[] failed = new boolean[n];
+    boolean[] looked = new boolean[n];
+    if (presenceQuery != null) {
+        presence_lookups(order, looked);                //# -E: a batch of keys per query.
+    } //end if
+    for (int k : order) {
+        if (looked[k]) {
+            continue; // for
+        } //end if
+        PipelineRow row = window.get(k);
+        restore_window_row(row);
+        if (!open_cursor_with( _key_count )) {
+            failed[k] = true;                           //# Reported by lookup_failed().
+        } else if (fetch_keyed_row(null)) {
+            row.tgt = Arrays.copyOf(t, Math.min(t.length, tgt_col_count + 1));
+        } //end if
+    } //end for
+    //# The comparisons.
+    for (int j=0; j<n; j++) {
+        int k = (keepRowOrder ? j : order[j]);
+        PipelineRow row = window.get(k);
+        restore_window_row(row);
+        lineHasErr = failed[k];
+        if (failed[k]) {
+            // Reported.
+        } else if (row.tgt == null) {
+            report_missing("Missing", null);
+        } else {
+            System.arraycopy(row.tgt, 0, t, 0, row.tgt.length);
+            if (!windowPrimed) {
+                primeTheTargetColumnDataTypes(); //# Once, as in the main loops.
+                windowPrimed = true;
+            } //end if
+            compare_audited_columns(Math.min(src_field_count, tgt_col_count));
+        } //end if
+        general_progress_check();
+    } //end for
+    window.clear();
+    _rowsChecked = rowsRead;                            //# Read on from the last row read.
+} //end function { window_flush() }
+
+
+/**
+##########################################################
+# Purpose: The -G option. Before the row by row audit,
+#          profile each column of the source and of TARGET:
+#          the rows, the values not null, and the sum, least
+#          and greatest of the numbers or the first and last
+#          dates; with one query on each dBase, or one pass
+#          of a flat-file. Report which columns reconcile.
+#          With -G skip, the exact numeric columns that
+#          reconcile are left out of the row by row audit.
+#          Their rows could still differ, eg. swapped values.
+#          Only the values are counted in the other columns,
+#          so they reconcile as Counts only.
+##########################################################
+**/
+public static void profile_columns() { //function profile_columns()
+    char[] kind = new char[tgt_col_count + 1];
+    ColumnProfile[] src = null, tgt = null;
+    System.out.println(DateUtils.now("HH:mm:ss")+
+        " Profiling the columns of the source and TARGET.");
+    long t0 = metric_start();
+    try {
+        if (targetJdbcConn != null) {
+            profile_kinds(kind);
+            tgt = profile_sql(targetJdbcConn, targetTable, kind);
+        } else {
+            tgt = profile_flat_file(targetFileName);
+            for (int i=1; i<=tgt_col_count; i++) {
+                kind[i] = (c[i].equals("''") ? ' ' : tgt[i].values == 0 ? 'C'
+                    : tgt[i].numeric ? 'N' : tgt[i].date ? 'D' : 'C');
+            } //end for
+        } //end if
+        src = (sqlInput
+            ? profile_sql(sourceJdbcConn, "("+sourceQueryText+") B", kind)
+            : profile_flat_file(inputFileName));
+    } catch (SQLException e) {
+        System.out.println("Warning 178: profile_columns(): SQLException ErrCode: "
+            +e.getErrorCode()+": "+e+". Continuing without the profile.");
+        return;
+    } catch (IOException e) {
+        System.out.println("Warning 178: profile_columns(): "+e+". Continuing without the profile.");
+        return;
+    }
+    metric_stop(_pRead, t0);
+    profileLines.add("Column profiles of the source and TARGET:");
+    profileLines.add("Column\tType\tSource values\tTARGET values\tSource sum\tTARGET sum"+
+        "\tSource least\tTARGET least\tSource greatest\tTARGET greatest\tReconciles");
+    profileLines.add("(rows)\t\t"+src[0].values+"\t"+tgt[0].values+"\t\t\t\t\t\t\t"+
+        (src[0].values == tgt[0].values ? "Yes" : "No"));
+    String skipped = "";
+    for (int i=1; i<=tgt_col_count; i++) {
+        if (kind[i] == ' ') {
+            continue; // for
+        } //end if
+        ColumnProfile a = src[i], b = tgt[i];
+        boolean same = (a.values == b.values);
+        String line = c[i].trim()+"\t"+kind[i]+"\t"+a.values+"\t"+b.values;
+        if (kind[i] == 'N' || kind[i] == 'F') {
+            same &= a.numeric && b.numeric && same_value(a.sum, b.sum)
+                 && same_value(a.min, b.min) && same_value(a.max, b.max);
+            line += "\t"+(a.numeric ? a.sum : "Not numbers")+"\t"+(b.numeric ? b.sum : "Not numbers")+
+                "\t"+a.min+"\t"+b.min+"\t"+a.max+"\t"+b.max;
+        } else if (kind[i] == 'D') {
+            same &= a.date && b.date && same_value(a.first, b.first) && same_value(a.last, b.last);
+            line += "\t\t\t"+(a.date ? profile_date(a.first) : "Not dates")+
+                "\t"+(b.date ? profile_date(b.first) : "Not dates")+
+                "\t"+profile_date(a.last)+"\t"+profile_date(b.last);
+        } else {
+            line += "\t\t\t\t\t\t";
+        } //end if
+        profileLines.add(line+"\t"+(!same ? "No" : kind[i] == 'C' ? "Counts only" : "Yes"));
+        if (same && kind[i] == 'N' && profileSkip && !isKeyColumn[i]) {
+            profileMatched.add(c[i].trim().toLowerCase());
+            skipped += c[i].trim()+", ";
+        } //end if
+    } //end for
+    for (String line : profileLines) {
+        System.out.println(line);
+    } //end for
+    if (!skipped.equals("")) {
+        System.out.println(DateUtils.now("HH:mm:ss")+
+            " Not auditing the columns that reconcile exactly: "+skipped.replaceAll(", $","."));
+    } //end if
+} //end function { profile_columns() }
+
+
+/**
+##########################################################
+# Purpose: The -G option. The kind of each TARGET column
+#          from its JDBC type: N an exact number, F a float,
+#          D a date, C anything else, ' ' not in the table.
+##########################################################
+ *
+ * @param kind Set from 1.
+ * @throws java.sql.SQLException
+ */
+public static void profile_kinds(char[] kind) throws SQLException { //function profile_kinds(kind)
+    String cols = "";
+    for (int i=1; i<=tgt_col_count; i++) {
+        cols += " "+(c[i].equals("''") ? "1" : c[i])+",";
+    } //end for
+    Statement q = targetJdbcConn.createStatement();
+    ResultSet rs = q.executeQuery("select"+cols.replaceAll(",$","")+" from "+targetTable+" where 1=0");
+    _roundTrips++;
+    ResultSetMetaData meta = rs.getMetaData();
+    for (int i=1; i<=tgt_col_count; i++) {
+        switch (c[i].equals("''") ? Types.NULL : meta.getColumnType(i)) {
+            case Types.NULL:     kind[i] = ' '; break;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+            case Types.BIGINT:   kind[i] = 'N'; break;
+            case Types.FLOAT:
+            case Types.REAL:
+            case Types.DOUBLE:   kind[i] = 'F'; break;
+            case Types.DATE:
+            case Types.TIMESTAMP: kind[i] = 'D'; break;
+            default:             kind[i] = 'C';
+        } // end switch
+    } //end for
+    q.close();
+} //end function { profile_kinds() }
+
+
+/**
+##########################################################
+# Purpose: The -G option. Profile the columns of a table or
+#          of a (query) in one query:
+#            select count(*), count(A), sum(A), min(A), max(A),
+#                   count(B), min(B), max(B), count(C), ...
+##########################################################
+ *
+ * @param conn
+ * @param from_ The table or (query) B.
+ * @param kind See profile_kinds().
+ * @return The profiles from 1, with the row count in [0].
+ * @throws java.sql.SQLException
+ */
+public static ColumnProfile[] profile_sql(Connection conn, String from_, char[] kind)
+        throws SQLException { //function profile_sql(conn, from_, kind)
+    String sql = "select count(*)";
+    for (int i=1; i<=tgt_col_count; i++) {
+        if (kind[i] == ' ') {
+            continue; // for
+        } //end if
+        sql += ", count("+c[i]+")";
+        if (kind[i] == 'N' || kind[i] == 'F') {
+            sql += ", sum("+c[i]+")";
+        } //end if
+        if (kind[i] != 'C') {
+            sql += ", min("+c[i]+"), max("+c[i]+")";
+        } //end if
+    } //end for
+    sql += " from "+from_;
+    Statement q = conn.createStatement();
+    ResultSet rs = q.executeQuery(sql);
+    _roundTrips++;
+    rs.next();
+    ColumnProfile[] profile = new ColumnProfile[tgt_col_count + 1];
+    profile[0] = new ColumnProfile();
+    profile[0].values = rs.getLong(1);
+    int at = 2;
+    for (int i=1; i<=tgt_col_count; i++) {
+        ColumnProfile p_ = profile[i] = new ColumnProfile();
+        if (kind[i] == ' ') {
+            continue; // for
+        } //end if
+        p_.values = rs.getLong(at++);
+        if (kind[i] == 'N' || kind[i] == 'F') {
+            BigDecimal sum = rs.getBigDecimal(at++);
+            p_.sum = (sum != null ? sum : BigDecimal.ZERO);
+            p_.min = rs.getBigDecimal(at++);
+            p_.max = rs.getBigDecimal(at++);
+        } else if (kind[i] == 'D') {
+            p_.first = rs.getTimestamp(at++);
+            p_.last = rs.getTimestamp(at++);
+        } //end if
+    } //end for
+    q.close();
+    return profile;
+} //end function { profile_sql() }
+
+
+/**
+##########################################################
+# Purpose: The -G option. Profile the columns of a pipe
+#          delimited flat-file in one pass. An empty value
+#          is null, as it would load.
+##########################################################
+ *
+ * @param fName
+ * @return The profiles from 1, with the row count in [0].
+ * @throws java.io.IOException
+ */
+public static ColumnProfile[] profile_flat_file(String fName) throws IOException { //function profile_flat_file(fName)
+    ColumnProfile[] profile = new ColumnProfile[tgt_col_count + 1];
+    for (int i=0; i<=tgt_col_count; i++) {
+        profile[i] = new ColumnProfile();
+    } //end for
+    String[] into = new String[tgt_col_count];
+    BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(fName)), 65536);
+    try {
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            if (line.startsWith("HEADER|") || line.startsWith("TRAILER|")) {
+                continue; // for
+            } //end if
+            profile[0].values++;
+            Arrays.fill(into, null);
+            split_delimited_line(line.trim(), '|', into);
+            for (int i=1; i<=tgt_col_count; i++) {
+                profile[i].add(into[i-1]);
+            } //end for
+        } //end for
+    } finally {
+        in.close();
+    }
+    return profile;
+} //end function { profile_flat_file() }
+
+
+/**
+##########################################################
+# Purpose: The -G option. Show a date from a file or a dBase
+#          alike, with the milliseconds only if it has them.
+##########################################################
+ *
+ * @param d
+ * @return
+ */
+public static String profile_date(Date d) { //function profile_date(d)
+    if (d == null) {
+        return "null";
+    } //end if
+    return new SimpleDateFormat(d.getTime() % 1000 != 0
+        ? "yyyy-MM-dd HH:mm:ss.SSS" : "yyyy-MM-dd HH:mm:ss").format(d);
+} //end function { profile_date() }
+
+
+/**
+##########################################################
+# Purpose: The -G option. Are two numbers or dates the same,
+#          or both null?
+##########################################################
+ *
+ * @param a
+ * @param b
+ * @return
+ */
+public static boolean same_value(Object a, Object b) { //function same_value(a, b)
+    if (a == null || b == null) {
+        return a == b;
+    } else if (a instanceof BigDecimal) {
+        return ((BigDecimal) a).compareTo((BigDecimal) b) == 0;
+    } else {
+        return ((Date) a).getTime() == ((Date) b).getTime();
+    } //end if
+} //end function { same_value() }
+
+
+/**
+##########################################################
+# Purpose: The -E option. Prepare one query that looks up
+#          <presenceBatch> keys at a time, as the target query
+#          would one at a time, and returns the number of
+#          each key found:
+#            select 1 from T where k1 = ? and k2 = ?
+#            union all select 2 from T where k1 = ? and k2 = ?
+#            ...
+#          If it can't, the keys are looked up one at a time.
+##########################################################
+ *
+ * @param query_ The target query.
+ */
+public static void prepare_presence_query(String query_) { //function prepare_presence_query(query_)
+    String from = query_.substring(query_.toLowerCase().indexOf(" from "));
+    StringBuilder sql = new StringBuilder();
+    for (int slot=1; slot<=presenceBatch; slot++) {
+        sql.append(slot == 1 ? "select " : " union all select ").append(slot).append(from);
+    } //end for
+    try {
+        presenceQuery = targetJdbcConn.prepareStatement(sql.toString());
+        System.out.println(DateUtils.now("HH:mm:ss")+
+            " Checking the presence of "+presenceBatch+" keys per query.");
+    } catch (SQLException e) {
+        System.out.println("Warning 174: prepare_presence_query(): SQLException ErrCode: "
+            +e.getErrorCode()+": "+e+". Looking up one key at a time.");
+        presenceQuery = null;
+    }
+} //end function { prepare_presence_query() }
+
+
+/**
+##########################################################
+# Purpose: The -E option. Look up the keys of the -W window
+#          rows, in <order>, <presenceBatch> per query. The
+#          last batch repeats its last key to fill the query.
+#          Each row found gets an empty TARGET row.
+#          A batch that fails is left to be looked up one key
+#          at a time, which reports the key that fails.
+##########################################################
+ *
+ * @param order The rows in key order.
+ * @param looked Set for the rows looked up.
+ */
+public static void presence_lookups(Integer[] order, boolean[] looked) { //function presence_lookups()
+    for (int from=0; from<order.length; from+=presenceBatch) {
+        int m = Math.min(presenceBatch, order.length - from);
+        try {
+            for (int slot=0; slot<presenceBatch; slot++) {
+                String[] src = window.get(order[from + Math.min(slot, m - 1)]).src;
+                for (int i=1; i<=_key_count; i++) {
+                    bind_typed(presenceQuery, slot * _key_count + i, src[key_pos[i]].trim(),
+                        keyJdbcType[i], key_pos[i]);     //# As bind_key(), key element i.
+                } //end for
+            } //end for
+            long t0 = metric_start();
+            ResultSet found = presenceQuery.executeQuery();
+            metric_stop(_pLookup, t0);
+            _roundTrips++;
+            while (found.next()) {
+                int slot = found.getInt(1) - 1;
+                if (slot < m) {
+                    window.get(order[from + slot]).tgt = noRow;
+                } //end if
+            } //end while
+            found.close();
+            for (int slot=0; slot<m; slot++) {
+                looked[order[from + slot]] = true;
+            } //end for
+        } catch (SQLException e) {
+            System.out.println("Warning 175: presence_lookups(): SQLException ErrCode: "
+                +e.getErrorCode()+": "+e+". Looking up these "+m+" keys one at a time.");
+        }
+    } //end for
+} //end function { presence_lookups() }
+
+
+/**
+##########################################################
+# Purpose: The -W option. Put a source row of the window
+#          back into s[], p[] and the counts.
+##########################################################
+ *
+ * @param row
+ */
+public static void restore_window_row(PipelineRow row) { //function restore_window_row(row)
+    System.arraycopy(row.src, 0, s, 0, row.src.length);
+    src_field_count = row.fields;
+    _rowsChecked = row.rowNo;
+    for (int i=1; i<=_key_count; i++) {
+        p[i] = s[key_pos[i]];
+    } //end for
+} //end function { restore_window_row() }
+
+
+/**
+##########################################################
+# Purpose: The -F option. Compare the input-file to the
+#          TARGET data-file without a dBase: sort both by
+#          key (see class ExternalSort), then merge them,
+#          comparing the rows with the same key as the
+#          lookups would have, and reporting the Missing and,
+#          with -r, the NoSource rows as they go by.
+#          The Line No is the source data line's number.
+##########################################################
+**/
+public static void main_loop_file_merge() { //function main_loop_file_merge()
+    int[] keyAt = new int[_key_count];
+    boolean[] numeric = new boolean[_key_count];
+    for (int i=1; i<=_key_count; i++) {
+        keyAt[i-1] = key_pos[i];
+        numeric[i-1] = numericStringsOn;              //# Else literally, as with -n.
+    } //end for
+    int threads = Runtime.getRuntime().availableProcessors();
+    ExternalSort source = null, target = null;
+    long merged = 0;
+    try {
+        flat_input_file.close();                       //# The HEADER was read. The sort reads it all again.
+        sourceFileStream = null;
+        System.out.println(DateUtils.now("HH:mm:ss")+
+            " Sorting source data-file: "+inputFileName.trim()+
+            " in runs of "+sortRunRows+" rows on "+threads+" threads.");
+        long t0 = metric_start();
+        source = ExternalSort.sort(new File(inputFileName), keyAt, numeric, sortRunRows, threads);
+        metric_stop(_pRead, t0);
+        System.out.println(DateUtils.now("HH:mm:ss")+
+            " Sorting TARGET data-file: "+targetFileName);
+        t0 = metric_start();
+        target = ExternalSort.sort(new File(targetFileName), keyAt, numeric, sortRunRows, threads);
+        metric_stop(_pLookup, t0);
+        sourceRowTotal = source.lines;
+        System.out.println(DateUtils.now("HH:mm:ss")+
+            " Merging "+source.lines+" source and "+target.lines+" TARGET rows from "+
+            (source.runs()+target.runs())+" sorted runs on disk.");
+        ExternalSort.Line src = source.next(), tgt = target.next();
+        Object[] matchedKey = null;                    //# The last key found in both.
+        boolean primedS = false, primedT = false;
+        while (src != null || (tgt != null && reverseCompare)) {
+            int cmp = (src == null ? 1 : tgt == null ? -1 : ExternalSort.compare_keys(src.key, tgt.key));
+            if (cmp > 0) {                             //# This TARGET key is behind the source.
+                if (reverseCompare && (matchedKey == null
+                    || ExternalSort.compare_keys(matchedKey, tgt.key) != 0)) {
+                    split_flat_line(tgt.text, t);
+                    _missingRowsInReverseCompare++;
+                    String str = "";
+                    for (int i=1; i<=_key_count; i++) {
+                        str += t[key_pos[i]]+ "\t";
+                    } //end for
+                    spreadSheet.println( str+"NoSource" );
+                    max_err_exit();
+                } //end if
+                tgt = target.next();
+                continue; // while
+            } //end if
+            lineHasErr = false;
+            _rowsChecked = (int) src.no;               //# For the Line No.
+            src_field_count = split_flat_line(src.text, s);
+            if (src_field_count >= s.length) {         //# A wider line than the table.
+                array_boundary( src_field_count );
+                split_flat_line(src.text, s);
+            } //end if
+            if (!primedS) {
+                primeTheSourceColumnDataTypes();
+                primedS = true;
+            } //end if
+            for (int i=1; i<=_key_count; i++) {
+                p[i] = s[key_pos[i]];
+            } //end for
+            if (_rowsChecked > _jump_over_lines
+                && (samplePercent <= 0 || in_sample(p, _key_count))) {
+                _rowsAudited++;
+                if (src_field_count != tgt_col_count & (! suppressWarnings)) {
+                    System.out.println(" Warning 349: Line: "+_rowsChecked+
+                        " The SOURCE and TARGET column counts differ respectively: "+
+                         src_field_count+ ", "+ tgt_col_count);
+                } //end if
+                if (cmp < 0) {
+                    report_missing("Missing", null);
+                } else {
+                    matchedKey = tgt.key;
+                    t0 = metric_start();
+                    int tgt_field_count = split_flat_line(tgt.text, t);
+                    metric_stop(_pFetch, t0);
+                    if (!primedT) {
+                        primeTheTargetColumnDataTypes();
+                        primedT = true;
+                    } //end if
+                    compare_audited_columns(Math.min(src_field_count, tgt_field_count));
+                } //end if
+            } //end if
+            src = source.next();
+            _rowsChecked = (int) ++merged;             //# For the progress.
+            general_progress_check();
+        } //end while
+        if (source.trailer != null) {
+            System.out.println("Trailer total: "+ ExternalSort.field(source.trailer, 2)+
+                " Lines counted: "+ source.lines);
+        } //end if
+    } catch (IOException e) {
+        System.out.println("Error 180: main_loop_file_merge(): "+e);
+        System.exit(180);
+    } finally {
+        if (source != null) {
+            source.close();
+        } //end if
+        if (target != null) {
+            target.close();
+        } //end if
+    }
+    reverseCompareDone = reverseCompare;
+} //end function { main_loop_file_merge() }
+
+
+/**
+##########################################################
+# Purpose: The -K option. Open the local snapshot of the
+#          TARGET columns, taking it first if there is none
+#          of these columns and keys, so the lookups read it
+#          instead of the TARGET dBase. Delete the file to
+#          take a new one.
+##########################################################
+**/
+public static void open_target_snapshot() { //function open_target_snapshot()
+    int n = tgtSelectCount;
+    int[] keyAt = new int[_key_count];
+    boolean[] numeric = new boolean[_key_count];
+    String heading = "SNAPSHOT|"+targetTable.trim().toLowerCase()+"|";
+    for (int j=1; j<=n; j++) {
+        heading += c[tgtCol[j]].trim().toLowerCase()+"|";
+    } //end for
+    heading += "KEYS";
+    for (int i=1; i<=_key_count; i++) {
+        for (int j=1; j<=n; j++) {
+            if (tgtCol[j] == key_pos[i]) {
+                keyAt[i-1] = j-1;
+            } //end if
+        } //end for
+        String bind = key_bind_name(keyJdbcType[i]);
+        numeric[i-1] = bind.equals("integer") || bind.equals("number");
+        heading += "|"+keyAt[i-1];
+    } //end for
+    File file_ = new File(snapshotFileName);
+    try {
+        snapshot = TargetSnapshot.open(file_, heading, n, keyAt, numeric);
+        if (snapshot != null) {
+            System.out.println(DateUtils.now("HH:mm:ss")+
+                " Using the TARGET snapshot "+file_+" taken "+new Date(file_.lastModified()));
+        } else if (make_target_snapshot(file_, heading, keyAt, numeric)) {
+            snapshot = TargetSnapshot.open(file_, heading, n, keyAt, numeric);
+        } //end if
+    } catch (IOException e) {
+        System.out.println("Warning 170: open_target_snapshot(): "+e);
+    }
+    if (snapshot == null) {
+        System.out.println("Warning 171: Continuing with lookups on the TARGET dBase.");
+        return;
+    } //end if
+    if (lookupThreads > 0 || joinLookup) {
+        System.out.println(DateUtils.now("HH:mm:ss")+
+            " -L and -J are not used with a snapshot.");
+        lookupThreads = 0;
+        joinLookup = false;
+    } //end if
+    snapshotKey = new String[_key_count];
+} //end function { open_target_snapshot() }
+
+
+/**
+##########################################################
+# Purpose: The -K option. Unload the TARGET columns in key
+#          order into <file_> and its sparse index, as
+#          do_unload_sql() unloads, with the heading line first.
+# Returns: False if it could not, eg. when the dBase sorts
+#          the keys in another order than the lookups compare
+#          them (a case insensitive collation).
+##########################################################
+ *
+ * @param file_
+ * @param heading
+ * @param keyAt
+ * @param numeric
+ * @return
+ */
+public static boolean make_target_snapshot(File file_, String heading, int[] keyAt,
+        boolean[] numeric) { //function make_target_snapshot()
+    int n = tgtSelectCount;
+    String cols = "", order = "";
+    for (int j=1; j<=n; j++) {
+        cols += " "+c[tgtCol[j]].trim()+",";
+    } //end for
+    for (int i=1; i<=_key_count; i++) {
+        order += " "+c[key_pos[i]].trim()+",";
+    } //end for
+    String sql = "select"+cols.replaceAll(",$","")+" from "+targetTable+
+        " order by"+order.replaceAll(",$","");
+    File tmp = new File(file_.getPath()+".tmp"),
+         idxTmp = new File(file_.getPath()+".idx.tmp"),
+         idxFile = new File(file_.getPath()+".idx");
+    System.out.println(DateUtils.now("HH:mm:ss")+
+        " Taking a snapshot of TARGET into "+file_+":\n\t "+sql);
+    OutputStream out = null;
+    try {
+        Statement snap = targetJdbcConn.createStatement(
+            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        snap.setFetchSize(unloadFetchSize);
+        ResultSet rs = snap.executeQuery(sql);
+        _roundTrips++;
+        out = new BufferedOutputStream(new FileOutputStream(tmp), 65536);
+        byte[] bytes = (heading+"\n").getBytes("UTF-8");
+        out.write(bytes);
+        long offset = bytes.length;
+        long[] offsets = new long[1024];
+        List<String> keys = new ArrayList<String>();
+        String[] vals = new String[n], key = new String[keyAt.length], prev = null;
+        StringBuilder line = new StringBuilder();
+        int rows = 0;
+        while (rs.next()) {
+            line.setLength(0);
+            for (int j=0; j<n; j++) {
+                vals[j] = rs.getString(j+1);
+                line.append(TargetSnapshot.escape(vals[j])).append('|');
+            } //end for
+            line.append('\n');
+            for (int i=0; i<keyAt.length; i++) {
+                key[i] = vals[keyAt[i]];
+            } //end for
+            if (prev != null && TargetSnapshot.compare_keys(prev, key, numeric) > 0) {
+                System.out.println("Warning 168: make_target_snapshot(): TARGET sorts the keys"+
+                    " in another order, at row "+(rows+1)+". No snapshot was taken.");
+                snap.close();
+                out.close();
+                tmp.delete();
+                return false;
+            } //end if
+            if (rows % TargetSnapshot.every == 0) {
+                if (keys.size() == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                } //end if
+                offsets[keys.size()] = offset;
+                String k = "";
+                for (int i=0; i<keyAt.length; i++) {
+                    k += TargetSnapshot.escape(key[i])+"|";
+                } //end for
+                keys.add(k);
+            } //end if
+            bytes = line.toString().getBytes("UTF-8");
+            out.write(bytes);
+            offset += bytes.length;
+            rows++;
+            String[] swap = (prev == null ? new String[keyAt.length] : prev);
+            prev = key;
+            key = swap;
+        } //end while
+        snap.close();
+        out.close();
+        TargetSnapshot.write_index(idxTmp, offsets, keys);
+        file_.delete();
+        idxFile.delete();
+        if (!tmp.renameTo(file_) || !idxTmp.renameTo(idxFile)) {
+            throw new IOException("Can't rename "+tmp+" and "+idxTmp);
+        } //end if
+        System.out.println(DateUtils.now("HH:mm:ss")+
+            " Took a snapshot of "+rows+" rows with "+keys.size()+" index entries.");
+        return true;
+    } catch (SQLException e) {
+        System.out.println("Warning 169: make_target_snapshot(): SQLException ErrCode: "
+            +e.getErrorCode()+": "+e);
+    } catch (IOException e) {
+        System.out.println("Warning 170: make_target_snapshot(): "+e);
+    }
+    try {
+        if (out != null) {
+            out.close();
+        } //end if
+    } catch (IOException e) {
+        // Removed below anyway.
+    }
+    tmp.delete();
+    idxTmp.delete();
+    return false;
+} //end function { make_target_snapshot() }
+
+
+/**
+##########################################################
+# Purpose: The -Q option, when the source query runs on the
+#          TARGET connection. Let the dBase find the rows that
+#          differ, with one statement:
+#            select B.col1, A.col1, ... from (<source query>) B
+#              left|full outer join <targetTable> A
+#              on A.key1=B.key1 and ...
+#              where A.key1 is null [or B.key1 is null]
+#                 or (A.col1 <> B.col1 or <one of them null>) ...
+#          Only those rows come back, and they go through the
+#          usual diff functions, so -v, -n and the date and
+#          space rules still decide what is reported.
+#          The dBase must return every row the diff functions
+#          could report, so the character columns are compared
+#          by case and length, see exact_inequality(). On a
+#          dBase where that is not known, or if the statement
+#          fails before any row came back, each row is looked
+#          up instead.
+# Returns: False if -Q can't be used, and nothing was read.
+##########################################################
+ *
+ * @return
+ */
+public static boolean main_loop_in_database() { //function main_loop_in_database()
+    if (!sqlInput) {
+        System.out.println("Warning 167: -Q needs a .sql input-file."+
+            " Continuing with a lookup per row.");
+        return false;
+    } //end if
+    int n = tgtSelectCount;
+    int[] colOf = new int[tgt_col_count+1];     //# Column number to its place in the select.
+    String pairs = "", on = "", differs = "", cols = "";
+    for (int j=1; j<=n; j++) {
+        cols += " "+c[tgtCol[j]].trim()+",";
+    } //end for
+    boolean[] text = new boolean[n+1];
+    String product = "";
+    try {
+        product = targetJdbcConn.getMetaData().getDatabaseProductName();
+        Statement q = targetJdbcConn.createStatement();
+        ResultSetMetaData meta = q.executeQuery(
+            "select"+cols.replaceAll(",$","")+" from "+targetTable+" where 1=0").getMetaData();
+        _roundTrips++;
+        for (int j=1; j<=n; j++) {
+            switch (meta.getColumnType(j)) {
+                case Types.CHAR: case Types.VARCHAR: case Types.LONGVARCHAR: case Types.CLOB:
+                case Types.NCHAR: case Types.NVARCHAR: case Types.LONGNVARCHAR: case Types.NCLOB:
+                    text[j] = true;
+                    break; // switch
+                default:
+                    text[j] = false;
+            } // end switch
+        } //end for
+        q.close();
+    } catch (SQLException e) {
+        System.out.println("Warning 182: main_loop_in_database(): SQLException ErrCode: "
+            +e.getErrorCode()+": "+e+". Continuing with a lookup per row.");
+        return source_cursor_after_all();
+    }
+    for (int j=1; j<=n; j++) {
+        String name = c[tgtCol[j]].trim();
+        colOf[tgtCol[j]] = j;
+        pairs += " B."+name+", A."+name+",";
+        if (!isKeyColumn[tgtCol[j]]) {
+            String ne = (text[j] ? exact_inequality(product, "A."+name, "B."+name)
+                                 : "A."+name+" <> B."+name);
+            if (ne == null) {
+                System.out.println("Warning 181: -Q can't compare text by case and length on "+
+                    product+". Continuing with a lookup per row.");
+                return source_cursor_after_all();
+            } //end if
+            differs += "\n   or ("+ne+
+                " or (A."+name+" is null and B."+name+" is not null)"+
+                " or (A."+name+" is not null and B."+name+" is null))";
+        } //end if
+    } //end for
+    for (int i=1; i<=_key_count; i++) {
+        on += " A."+c[key_pos[i]].trim()+"=B."+c[key_pos[i]].trim()+" and";
+    } //end for
+    String key1 = c[key_pos[1]].trim();
+    String diffSql = "select"+pairs.replaceAll(",$","")+
+        " from ("+sourceQueryText+") B "+
+        (reverseCompare ? "full" : "left")+" outer join "+targetTable+" A on"+on.replaceAll(" and$","")+
+        "\n where A."+key1+" is null"+(reverseCompare ? " or B."+key1+" is null" : "")+
+        differs;
+    System.out.println(DateUtils.now("HH:mm:ss")+
+        " Comparing in the dBase with:\n\t "+diffSql);
+    int k1 = colOf[key_pos[1]];                 //# The first key's place.
+    int returned = 0;
+    _rowsChecked = 0;
+    try {
+        Statement diffStmt = targetJdbcConn.createStatement(
+            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        diffStmt.setFetchSize(unloadFetchSize);
+        long t0 = metric_start();
+        ResultSet diffs = diffStmt.executeQuery(diffSql);
+        metric_stop(_pLookup, t0);
+        _roundTrips++;
+        boolean primed = false;
+        while (diffs.next()) {
+            lineHasErr = false;
+            returned++;
+            _rowsChecked = returned;                //# The Line No is the differing row's number.
+            if (diffs.getString(2*k1 - 1) == null) {    //# In TARGET only.
+                _missingRowsInReverseCompare++;
+                String str = "";
+                for (int i=1; i<=_key_count; i++) {
+                    str += diffs.getString(2*colOf[key_pos[i]])+ "\t";
+                } //end for
+                spreadSheet.println( str+"NoSource" );
+                max_err_exit();
+                continue; // while
+            } //end if
+            _rowsAudited++;
+            src_field_count = tgt_col_count;
+            for (int j=1; j<=n; j++) {              //# Prefer the empty sting to null.
+                String v = diffs.getString(2*j - 1);
+                s[tgtCol[j]] = (v != null ? v : "");
+            } //end for
+            for (int i=1; i<=_key_count; i++) {
+                p[i] = s[key_pos[i]];
+            } //end for
+            if (diffs.getString(2*k1) == null) {
+                report_missing("Missing", null);
+                general_progress_check();
+                continue; // while
+            } //end if
+            for (int j=1; j<=n; j++) {
+                t[tgtCol[j]] = diffs.getString(2*j);
+            } //end for
+            if (!primed) {
+                primeTheSourceColumnDataTypes();
+                primeTheTargetColumnDataTypes();
+                primed = true;
+            } //end if
+            compare_audited_columns(tgt_col_count);
+            general_progress_check();
+        } //end while
+        diffStmt.close();
+    } catch (SQLException e) {
+        if (returned == 0) {                            //# Nothing reported yet.
+            System.out.println("Warning 182: main_loop_in_database(): SQLException ErrCode: "
+                +e.getErrorCode()+": "+e+". Continuing with a lookup per row.");
+            return source_cursor_after_all();
+        } //end if
+        System.out.println("Error 165: main_loop_in_database(): SQLException ErrCode: "
+            +e.getErrorCode()+": "+e);
+        System.exit(165);
+    }
+    System.out.println(DateUtils.now("HH:mm:ss")+
+        " The dBase returned "+returned+" differing rows.");
+    long total = count_source_rows(sourceQueryText);    //# For the statistics of the run.
+    if (total >= 0) {
+        _rowsChecked = (int) total;
+    } //end if
+    reverseCompareDone = reverseCompare;
+    return true;
+} //end function { main_loop_in_database() }
+
+
+/**
+##########################################################
+# Purpose: The -Q option. A null-safe inequality of the text
+#          columns <a> and <b> that is true wherever
+#          character_diff() could report a difference: by
+#          case, and by length, as '  ' and '   ' are equal to
+#          a blank padded comparison. It may be true more often.
+#          SQL Server compares by the column collation, often
+#          case insensitive, so by a binary one. Informix and
+#          Oracle compare by case, unless the database is
+#          NLSCASE INSENSITIVE or the session's NLS_COMP is
+#          LINGUISTIC, in which case -Q should not be used.
+# Returns: The SQL, or null for any other dBase.
+##########################################################
+ *
+ * @param product The dBase product name, from its JDBC meta data.
+ * @param a
+ * @param b
+ * @return
+ */
+public static String exact_inequality(String product, String a, String b) { //function exact_inequality(product, a, b)
+    String dbase = product.toLowerCase();
+    if (dbase.indexOf("sql server") >= 0) {
+        return a+" collate Latin1_General_BIN2 <> "+b+" collate Latin1_General_BIN2"+
+            " or datalength("+a+") <> datalength("+b+")";
+    } else if (dbase.indexOf("informix") >= 0) {
+        return a+" <> "+b+" or octet_length("+a+") <> octet_length("+b+")";
+    } else if (dbase.indexOf("oracle") >= 0) {
+        return a+" <> "+b+" or length("+a+") <> length("+b+")";
+    } else if (dbase.equals("h2")) {
+        return "cast("+a+" as varbinary) <> cast("+b+" as varbinary)";
+    } //end if
+    return null;
+} //end function { exact_inequality() }
+
+
+/**
+##########################################################
+# Purpose: The -Q option. Open the source cursor that -Q
+#          did not, so that each row is looked up instead.
+# Returns: False, for main_loop_in_database() to return.
+##########################################################
+ *
+ * @return
+ */
+public static boolean source_cursor_after_all() { //function source_cursor_after_all()
+    try {
+        _roundTrips++;
+        sourceCursor = sourceJdbcConn.createStatement().executeQuery(sourceQueryText);
+    } catch (SQLException e) {
+        System.out.println("Error 183: source_cursor_after_all(): "
+            +"SQLException ErrCode: "+e.getErrorCode()+": "+e);
+        System.exit(183);
+    }
+    _rowsChecked = 0;
+    return false;
+} //end function { source_cursor_after_all() }
+
+
+/**
+##########################################################
+# Purpose: The -J option. Instead of a lookup per row, load
+#          the source rows into a temp table on the TARGET
+#          dBase in batches, then compare them all with one
+#          outer join, as the -r reverse compare does with the
+#          source keys:
+#            select B.*, A.* from temp_source_rows B
+#              left|full outer join <targetTable> A
+#              on A.key1=B.key1 and ...
+#          A row with no A key is Missing. With -r the join is
+#          a full one, and a row with no B row is NoSource.
+#          Only the keys are staged as their TARGET types, for the
+#          join. The other values are staged as the source text,
+#          so that they are compared as a lookup compares them,
+#          not rounded, truncated or converted by the load.
+# Returns: False, before reading the source, if the temp table
+#          could not be made, so the lookup per row is used.
+##########################################################
+ *
+ * @return
+ */
+public static boolean main_loop_joined() { //function main_loop_joined()
+    int n = tgtSelectCount;
+    int[] colOf = new int[tgt_col_count+1];     //# Column number to its place in the temp table.
+    int[] stageType = new int[n+1];
+    String cols = "", aCols = "", bCols = "", places = "", on = "";
+    for (int j=1; j<=n; j++) {
+        String name = c[tgtCol[j]].trim();
+        colOf[tgtCol[j]] = j;
+        cols   += " "+name+",";                         //# Replaced by text below, bar the keys.
+        aCols  += " A."+name+",";
+        bCols  += " B."+name+",";
+        places += ",?";
+    } //end for
+    for (int i=1; i<=_key_count; i++) {
+        on += " A."+c[key_pos[i]].trim()+"=B."+c[key_pos[i]].trim()+" and";
+    } //end for
+    cols = cols.replaceAll(",$","");
+    aCols = aCols.replaceAll(",$","");
+    on = on.replaceAll(" and$","");
+    PreparedStatement stageIns = null;
+    try {
+        Statement ddl = targetJdbcConn.createStatement();
+        ResultSetMetaData typed = ddl.executeQuery(
+            "select"+cols+" from "+targetTable+" where 1=0").getMetaData();
+        cols = "";
+        for (int j=1; j<=n; j++) {
+            String name = c[tgtCol[j]].trim();
+            if (isKeyColumn[tgtCol[j]]) {
+                cols += " "+name+",";
+            } else {                                    //# Room for the source text of the value.
+                int width = Math.min(32739, 2 * typed.getColumnDisplaySize(j) + 32);
+                cols += " cast(null as lvarchar("+width+")) "+name+",";
+            } //end if
+        } //end for
+        cols = cols.replaceAll(",$","");
+        _roundTrips++;
+        ddl.execute("select 0 metaqa_row,"+cols+" from "+targetTable+
+            " where 1=0 into temp temp_source_rows with no log");
+        ResultSetMetaData shape = ddl.executeQuery(
+            "select * from temp_source_rows where 1=0").getMetaData();
+        for (int j=1; j<=n; j++) {
+            stageType[j] = shape.getColumnType(j+1);    //# After metaqa_row.
+        } //end for
+        ddl.close();
+        stageIns = targetJdbcConn.prepareStatement(
+            "insert into temp_source_rows values (?"+places+")");
+    } catch (SQLException e) {
+        System.out.println("Warning 161: main_loop_joined(): SQLException ErrCode: "
+            +e.getErrorCode()+": "+e+". Continuing with a lookup per row.");
+        return false;
+    }
+
+    //# Load the source rows.
+    System.out.println(DateUtils.now("HH:mm:ss")+
+        " Loading the source rows into temp_source_rows on TARGET.");
+    int staged = 0;
+    boolean autoCommit = true, commits = false, batches = false, primed = false;
+    _rowsChecked = 0;
+    try {
+        autoCommit = targetJdbcConn.getAutoCommit();
+        batches = targetJdbcConn.getMetaData().supportsBatchUpdates();
+        commits = targetJdbcConn.getMetaData().supportsTransactions();
+        if (commits) {
+            targetJdbcConn.setAutoCommit(false);
+        } //end if
+        while (true) {
+            if (sqlInput) {
+                if (!read_source_row()) {
+                    break; // while
+                } //end if
+            } else {
+                String line = read_flat_file_line_into_array();
+                if (line == null) {
+                    break; // while
+                } //end if
+                if (line.startsWith("TRAILER|")) {
+                    System.out.println("Trailer total: "+ s[2]+
+                        " Lines counted: "+ _rowsChecked);
+                    continue; // while
+                } //end if
+            } //end if
+            _rowsChecked++;
+            if (_rowsChecked <= _jump_over_lines) {
+                continue; // while
+            } //end if
+            if (!primed) {
+                primeTheSourceColumnDataTypes();        //# For the source date formats.
+                primed = true;
+            } //end if
+            for (int i=1; i<=_key_count; i++) {
+                p[i] = s[key_pos[i]];
+            } //end for
+            if (samplePercent > 0 && !samplePushedDown && !in_sample(p, _key_count)) {
+                continue; // while
+            } //end if
+            stageIns.setInt(1, _rowsChecked);
+            for (int j=1; j<=n; j++) {
+                String v = (tgtCol[j] <= src_field_count ? s[tgtCol[j]] : null);
+                if (v == null || is_blank(v)) {         //# Spaces are considered as null.
+                    stageIns.setNull(j+1, stageType[j]);
+                } else if (isKeyColumn[tgtCol[j]]) {
+                    bind_typed(stageIns, j+1, v.trim(), stageType[j], tgtCol[j]);
+                } else {
+                    stageIns.setString(j+1, v);
+                } //end if
+            } //end for
+            staged++;
+            if (batches) {
+                stageIns.addBatch();
+                if (staged % loadBatchSize == 0) {
+                    stageIns.executeBatch();
+                    _roundTrips++;
+                    if (commits) {
+                        targetJdbcConn.commit();
+                    } //end if
+                } //end if
+            } else {
+                stageIns.executeUpdate();
+                _roundTrips++;
+            } //end if
+        } //end while
+        if (batches && staged % loadBatchSize != 0) {
+            stageIns.executeBatch();                    //# The last part batch.
+            _roundTrips++;
+        } //end if
+        if (commits) {
+            targetJdbcConn.commit();
+            targetJdbcConn.setAutoCommit(autoCommit);
+        } //end if
+        stageIns.close();
+    } catch (SQLException e) {
+        System.out.println("Error 162: main_loop_joined(): SQLException ErrCode: "
+            +e.getErrorCode()+": "+e+"\n\tLoading the batch up to source row: "+_rowsChecked+
+            "\n\tA source key may not convert to its TARGET column type. Try without -J.");
+        System.exit(162);
+    }
+    System.out.println(DateUtils.now("HH:mm:ss")+
+        " Loaded "+staged+" rows"+(batches ? " in batches of "+loadBatchSize : "")+
+        ". Joining them to "+targetTable.trim()+(reverseCompare ? " both ways." : "."));
+    int rowsRead = _rowsChecked;
+
+    //# Compare the joined rows.
+    int aKey = 1 + n + colOf[key_pos[1]];               //# The first TARGET key in the join.
+    primed = false;
+    try {
+        Statement joinStmt = targetJdbcConn.createStatement(
+            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        joinStmt.setFetchSize(unloadFetchSize);
+        long t0 = metric_start();
+        ResultSet joined = joinStmt.executeQuery(
+            "select B.metaqa_row,"+bCols+aCols+" from temp_source_rows B "+
+            (reverseCompare ? "full" : "left")+" outer join "+targetTable+" A on"+on+
+            (keepRowOrder ? " order by 1" : ""));
+        metric_stop(_pLookup, t0);
+        _roundTrips++;
+        while (joined.next()) {
+            lineHasErr = false;
+            if (joined.getString(1) == null) {          //# In TARGET only.
+                _missingRowsInReverseCompare++;
+                String str = "";
+                for (int i=1; i<=_key_count; i++) {
+                    str += joined.getString(1 + n + colOf[key_pos[i]])+ "\t";
+                } //end for
+                spreadSheet.println( str+"NoSource" );
+                max_err_exit();
+                continue; // while
+            } //end if
+            _rowsChecked = joined.getInt(1);            //# For the Line No.
+            _rowsAudited++;
+            src_field_count = tgt_col_count;
+            for (int j=1; j<=n; j++) {                  //# Prefer the empty sting to null.
+                String v = joined.getString(1 + j);
+                s[tgtCol[j]] = (v != null ? v : "");
+            } //end for
+            for (int i=1; i<=_key_count; i++) {
+                p[i] = s[key_pos[i]];
+            } //end for
+            if (joined.getString(aKey) == null) {
+                report_missing("Missing", null);
+                general_progress_check();
+                continue; // while
+            } //end if
+            for (int j=1; j<=n; j++) {
+                t[tgtCol[j]] = joined.getString(1 + n + j);
+            } //end for
+            if (!primed) {                              //# The joined source text, as read.
+                primeTheSourceColumnDataTypes();
+                primeTheTargetColumnDataTypes();
+                primed = true;
+            } //end if
+            compare_audited_columns(tgt_col_count);
+            general_progress_check();
+        } //end while
+        joinStmt.close();
+        processSqlStatement("drop table temp_source_rows", targetJdbcConn);
+    } catch (SQLException e) {
+        System.out.println("Error 163: main_loop_joined(): SQLException ErrCode: "
+            +e.getErrorCode()+": "+e);
+        System.exit(163);
+    }
+    _rowsChecked = rowsRead;                            //# Out of order rows leave it at any row number.
+    reverseCompareDone = reverseCompare;
+    return true;
+} //end function { main_loop_joined() }
+
+
+/**
+##########################################################
+# Purpose: The -L option. Drive the main program loop as a
+#          pipeline of stages joined by bounded queues:
+#            reader thread: source row and its key;
+#            <lookupThreads> lookup threads, each on its own
+#              target connection: lookup and fetch; or with
+#              virtualLookups, a thread per row's lookup;
+#            this thread: diff and report, as before;
+#            writer thread: the spreadsheet (QueuedWriter).
+#          So the source, target and disk I/O and the diff
+#          overlap. With -O the rows are diffed, and so
+#          reported, in source order.
+# Returns: False if the pipeline could not start, in which
+#          case nothing was read yet.
+##########################################################
+ *
+ * @return
+ */
+public static boolean main_loop_pipelined() { //function main_loop_pipelined()
+    final int n = lookupThreads;
+    if (!(tempTargetTabSqlFile == null || tempTargetTabSqlFile.equals(""))) {
+        System.out.println("Warning 153: main_loop_pipelined(): The -c temp TARGET table is"
+            +" not visible to other connections. Continuing without -L.");
+        return false;
+    } //end if
+    final PreparedStatement[] lookupPrep = new PreparedStatement[n];
+    final Connection[] lookupConn = new Connection[n];
+    try {
+        for (int w=0; w<n; w++) {
+            lookupConn[w] = DriverManager.getConnection(
+                targetJdbcUrl, targetJdbcUserId, targetJdbcPassword);
+            lookupConn[w].setTransactionIsolation(targetJdbcConn.getTransactionIsolation());
+            lookupPrep[w] = lookupConn[w].prepareStatement(targetTableQuery);
+        } //end for
+    } catch (SQLException e) {
+        System.out.println("Warning 154: main_loop_pipelined(): SQLException ErrCode: "
+            +e.getErrorCode()+": "+e+". Continuing without -L.");
+        close_all(lookupConn);
+        return false;
+    }
+    System.out.println(DateUtils.now("HH:mm:ss")+
+        " Reading source "+(sqlInput ? "database cursor" : "data-file: "+inputFileName.trim())+
+        " with "+n+" lookup connections"+(keepRowOrder ? ", in source order." : "."));
+    final BlockingQueue<PipelineRow> toLookup = new ArrayBlockingQueue<PipelineRow>(pipelineDepth);
+    final BlockingQueue<PipelineRow> toDiff = new ArrayBlockingQueue<PipelineRow>(pipelineDepth);
+    final int[] rowsRead = {0};
+    final Exception[] readFailed = {null};           //# Seen by this thread after reader.join().
+    final int stages = (virtualLookups ? 1 : n);     //# Threads taking from toLookup.
+
+    Thread reader = new Thread("metaqa reader") {
+        public void run() {
+            try {
+                while (true) {
+                    PipelineRow row = new PipelineRow();
+                    long t0 = metric_start();                    //# As read_source_row() does.
+                    if (sqlInput) {
+                        if (!sourceCursor.next()) {
+                            break; // while
+                        } //end if
+                        row.fields = src_field_count;
+                        row.src = new String[tgt_col_count+1];
+                        for (int i=1; i<=tgt_col_count; i++) {      //# Prefer the empty sting to null.
+                            if (columnSkipped[i]) {
+                                continue; // for
+                            } //end if
+                            String v = sourceCursor.getString(i);
+                            row.src[i] = (v != null ? v : "");
+                        } //end for
+                        metric_stop(_pRead, t0);
+                    } else {
+                        String line = flat_input_file.readLine();
+                        if (line == null) {
+                            break; // while
+                        } //end if
+                        row.fields = split_flat_line(line, null);
+                        row.src = new String[row.fields+1];
+                        split_flat_line(line, row.src);
+                        metric_stop(_pRead, t0);
+                        if (line.startsWith("TRAILER|")) {
+                            System.out.println("Trailer total: "+ (row.fields > 1 ? row.src[2] : "")+
+                                " Lines counted: "+ rowsRead[0]);
+                            continue; // while
+                        } //end if
+                    } //end if
+                    row.rowNo = ++rowsRead[0];
+                    if (row.rowNo <= _jump_over_lines) {
+                        continue; // while
+                    } //end if
+                    row.keys = new String[_key_count+1];
+                    for (int i=1; i<=_key_count; i++) {
+                        row.keys[i] = (key_pos[i] < row.src.length ? row.src[key_pos[i]] : null);
+                    } //end for
+                    if (samplePercent > 0 && !samplePushedDown && !in_sample(row.keys, _key_count)) {
+                        continue; // while
+                    } //end if
+                    if (keepRowOrder) {
+                        toDiff.put(row);                         //# Its place in the order.
+                    } //end if
+                    toLookup.put(row);
+                } //end while
+            } catch (Exception e) {
+                System.out.println("Error 155: main_loop_pipelined(): reader: "+e);
+                readFailed[0] = e;                              //# Ends the run once the rows read are done.
+            } finally {
+                try {
+                    if (keepRowOrder) {
+                        toDiff.put(PipelineRow.END);
+                    } //end if
+                    for (int w=0; w<stages; w++) {
+                        toLookup.put(PipelineRow.END);
+                    } //end for
+                } catch (InterruptedException e) {
+                    // Ending anyway.
+                }
+            }
+        }
+    };
+
+    Thread[] lookup = new Thread[stages];
+    if (virtualLookups) {
+        lookup[0] = virtual_lookup_dispatcher(lookupPrep, toLookup, toDiff);
+    } else {
+        for (int w=0; w<n; w++) {
+            final PreparedStatement q = lookupPrep[w];
+            lookup[w] = new Thread("metaqa lookup "+w) {
+                public void run() {
+                    try {
+                        for (PipelineRow row = toLookup.take(); row != PipelineRow.END; row = toLookup.take()) {
+                            pipelined_lookup(q, row, toDiff);
+                        } //end for
+                        if (!keepRowOrder) {
+                            toDiff.put(PipelineRow.END);
+                        } //end if
+                    } catch (InterruptedException e) {
+                        // Ending anyway.
+                    }
+                }
+            };
+        } //end for
+    } //end if
+    reader.start();
+    for (int w=0; w<stages; w++) {
+        lookup[w].start();
+    } //end for
+
+    boolean sourcePrimed = false, targetPrimed = false;
+    int ended = 0;
+    try {
+        while (true) {
+            PipelineRow row = toDiff.take();
+            if (row == PipelineRow.END) {
+                if (keepRowOrder || ++ended == stages) {
+                    break; // while
+                } //end if
+                continue; // while
+            } //end if
+            if (keepRowOrder) {
+                row.looked.await();
+            } //end if
+            array_boundary( row.src.length );
+            System.arraycopy(row.src, 1, s, 1, row.src.length - 1);
+            src_field_count = row.fields;
+            lineHasErr = false;
+            _rowsChecked = row.rowNo;
+            _rowsAudited++;
+            if (!sourcePrimed) {
+                primeTheSourceColumnDataTypes();
+                sourcePrimed = true;
+            } //end if
+            if (!sqlInput && src_field_count != tgt_col_count & (! suppressWarnings)) {
+                System.out.println(" Warning 349: Line: "+_rowsChecked+
+                    " The SOURCE and TARGET column counts differ respectively: "+
+                     src_field_count+ ", "+ tgt_col_count);
+            } //end if
+            for (int i=1; i<=_key_count; i++) {
+                p[i] = row.keys[i];
+            } //end for
+            if (reverseCompare) {
+                save_key_for_reverse_compare(_key_count);
+            } //end if
+            _roundTrips++;
+            metric_add(_pLookup, row.lookupNanos);
+            if (row.lookupError instanceof SQLException) {
+                lookup_failed(_key_count, (SQLException) row.lookupError);
+                general_progress_check();
+                continue; // while
+            } else if (row.lookupError != null) {
+                System.out.println( "Error 80: open_cursor_with('"+_key_count+" keys'): "+row.lookupError);
+                System.exit(80);
+            } //end if
+            metric_add(_pFetch, row.fetchNanos);
+            if (row.tgt == null) {
+                report_missing("Missing", null);
+                general_progress_check();
+                continue; // while
+            } //end if
+            System.arraycopy(row.tgt, 1, t, 1, tgt_col_count);
+            if (!targetPrimed) {
+                primeTheTargetColumnDataTypes(); //# Do it once only, because it's a costly exercise.
+                targetPrimed = true;
+            } //end if
+            int min = (src_field_count < tgt_col_count ? src_field_count : tgt_col_count);
+            compare_audited_columns(min);
+            general_progress_check();
+        } //end while
+        reader.join();
+        for (int w=0; w<stages; w++) {
+            lookup[w].join();
+        } //end for
+    } catch (InterruptedException e) {
+        System.out.println( "Error 156: main_loop_pipelined(): "+e);
+        System.exit(156);
+    } finally {
+        close_all(lookupConn);
+    }
+    if (readFailed[0] != null) {                     //# Reported by the reader as Error 155.
+        System.exit(155);
+    } //end if
+    _rowsChecked = rowsRead[0];                      //# Out of order rows leave it at any row number.
+    return true;
+} //end function { main_loop_pipelined() }
+
+
+/**
+##########################################################
+# Purpose: Look up and fetch the target row of one pipeline
+#          row, then pass it on to the diff.
+##########################################################
+ *
+ * @param q The target query, on this thread's connection.
+ * @param row
+ * @param toDiff
+ * @throws java.lang.InterruptedException
+ */
+public static void pipelined_lookup(PreparedStatement q, PipelineRow row,
+        BlockingQueue<PipelineRow> toDiff) throws InterruptedException { //function pipelined_lookup()
+    long t0 = System.nanoTime();
+    try {
+        for (int i=1; i<=_key_count; i++) {
+            bind_key(q, i, row.keys[i]);
+        } //end for
+        ResultSet rs = q.executeQuery();
+        long t1 = System.nanoTime();
+        row.lookupNanos = t1 - t0;
+        if (rs.next()) {
+            row.tgt = new String[tgt_col_count+1];
+            for (int i=1; i<=tgtSelectCount; i++) {
+                row.tgt[tgtCol[i]] = rs.getString(i);
+            } //end for
+        } //end if
+        rs.close();
+        row.fetchNanos = System.nanoTime() - t1;
+    } catch (Exception e) {
+        row.lookupError = e;
+    }
+    if (keepRowOrder) {
+        row.looked.countDown();
+    } else {
+        toDiff.put(row);
+    } //end if
+} //end function { pipelined_lookup() }
+
+
+/**
+##########################################################
+# Purpose: The "-L <n> virtual" lookup stage. One thread
+#          takes the rows and starts each lookup on its own
+#          virtual thread. A semaphore of <n> permits keeps
+#          it to one lookup per pooled statement/connection,
+#          so no more lookups run at once than with -L <n>.
+#          It only helps from Java 21, where a virtual thread
+#          is cheaper than a pooled one. Before, it is -L <n>.
+# Returns: The dispatcher thread, not started.
+##########################################################
+ *
+ * @param lookupPrep The pool of target queries, one per connection.
+ * @param toLookup
+ * @param toDiff
+ * @return
+ */
+public static Thread virtual_lookup_dispatcher(final PreparedStatement[] lookupPrep,
+        final BlockingQueue<PipelineRow> toLookup,
+        final BlockingQueue<PipelineRow> toDiff) { //function virtual_lookup_dispatcher()
+    final int n = lookupPrep.length;
+    final Semaphore permits = new Semaphore(n);
+    final BlockingQueue<PreparedStatement> pool = new ArrayBlockingQueue<PreparedStatement>(n);
+    pool.addAll(Arrays.asList(lookupPrep));
+    final ExecutorService perRow = virtual_thread_executor(n);
+    return new Thread("metaqa lookup dispatcher") {
+        public void run() {
+            try {
+                for (PipelineRow row = toLookup.take(); row != PipelineRow.END; row = toLookup.take()) {
+                    final PipelineRow r = row;
+                    permits.acquire();
+                    perRow.execute(new Runnable() {
+                        public void run() {
+                            PreparedStatement q = pool.poll();  //# There is one per permit.
+                            try {
+                                pipelined_lookup(q, r, toDiff);
+                            } catch (InterruptedException e) {
+                                // Ending anyway.
+                            } finally {
+                                pool.offer(q);
+                                permits.release();
+                            }
+                        }
+                    });
+                } //end for
+                permits.acquire(n);                      //# Wait for the lookups in flight.
+                if (!keepRowOrder) {
+                    toDiff.put(PipelineRow.END);
+                } //end if
+            } catch (InterruptedException e) {
+                // Ending anyway.
+            } finally {
+                perRow.shutdown();
+            }
+        }
+    };
+} //end function { virtual_lookup_dispatcher() }
+
+
+/**
+##########################################################
+# Purpose: A new virtual thread per task, from Java 21.
+#          Older JVMs get a pool of <n> platform threads.
+##########################################################
+ *
+ * @param n
+ * @return
+ */
+public static ExecutorService virtual_thread_executor(int n) { //function virtual_thread_executor(n)
+    try {
+        return (ExecutorService) Executors.class
+            .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (Exception e) {
+        System.out.println(DateUtils.now("HH:mm:ss")+
+            " No virtual threads in Java "+System.getProperty("java.version")+
+            ". Using "+n+" pooled lookup threads, as -L "+n+" does.");
+        return Executors.newFixedThreadPool(n);
+    }
+} //end function { virtual_thread_executor() }
+
+
+/**
+##########################################################
+# Purpose: Close the connections, ignoring errors.
+##########################################################
+ *
+ * @param conns
+ */
+public static void close_all(Connection[] conns) { //function close_all(conns)
+    for (Connection conn : conns) {
+        try {
+            if (conn != null) {
+                conn.close();
+            } //end if
+        } catch (SQLException e) {
+            // Do nothing.
+        }
+    } //end for
+} //end function { close_all() }
+
+
+/**
+##########################################################
+# Purpose: Write the summary of the differences in each
+#          column, and their most frequent value pairs, to
+#          the spreadsheet, and the counts to stdout too.
+#          See class ColumnSummary.
+##########################################################
+**/
+public static void report_column_summary() { //function report_column_summary()
+    List<String> table = new ArrayList<String>(), detail = new ArrayList<String>();
+    for (int i=1; i<columnSummary.length; i++) {
+        ColumnSummary sum = columnSummary[i];
+        if (sum == null) {
+            continue; // for
+        } //end if
+        table.add(c[i].trim()+"\t"+sum.diffs+"\t"+sum.targetNull+"\t"+sum.sourceNull+"\t"+sum.deltas+
+            (sum.deltas == 0 ? "\t\t\t\t\t" : "\t"+sum.higher+
+                String.format("\t%.6g\t%.6g\t%.6g\t", sum.deltaSum / sum.deltas, sum.deltaMin, sum.deltaMax)+
+                sum.size_text()));
+        detail.add("Most frequent differences in "+c[i].trim()+":");
+        detail.add("Count\tOver by at most\t"+targetDBase.trim()+" Value\tSource Value");
+        detail.addAll(sum.top(summaryPairs));
+    } //end for
+    if (table.isEmpty()) {
+        return;
+    } //end if
+    table.add(0, "Differences by column:");
+    table.add(1, "Column\tDifferences\t"+targetDBase.trim()+" null\tSource null\tNumeric deltas"+
+        "\tSource higher\tMean delta\tLeast delta\tGreatest delta\tDelta sizes");
+    for (String line : table) {
+        System.out.println(line);
+        spreadSheet.println(line);
+    } //end for
+    for (String line : detail) {
+        spreadSheet.println(line);
+    } //end for
+} //end function { report_column_summary() }
+
+
+/**
+##########################################################
+# Purpose: The -X option. Fetch the TARGET row looked up by
+#          open_cursor_with(), from the row cache if it was
+#          found there, else from the dBase, and keep it, or
+#          that there is none, in the cache.
+# Returns: True if a row was fetched.
+##########################################################
+ *
+ * @param inputLine
+ * @return
+ */
+public static boolean fetch_keyed_row(String inputLine) { //function fetch_keyed_row(inputLine)
+    if (rowCache == null) {
+        return fetch_target_row(inputLine);
+    } //end if
+    if (cachedRow != null) {                            //# A hit.
+        String[] row = cachedRow;
+        cachedRow = null;
+        if (row == noRow) {
+            return false;
+        } //end if
+        System.arraycopy(row, 0, t, 0, row.length);
+        return true;
+    } //end if
+    boolean found = fetch_target_row(inputLine);
+    if (cacheKey != null) {                             //# Not after a failed fetch.
+        cache_row(cacheKey, (found ? Arrays.copyOf(t, Math.min(t.length, tgt_col_count + 1)) : noRow));
+    } //end if
+    return found;
+} //end function { fetch_keyed_row() }
+
+
+/**
+##########################################################
+# Purpose: The -X option. Keep a TARGET row in the cache,
+#          dropping the least recently used ones while the
+#          cache holds more than its megabytes.
+##########################################################
+ *
+ * @param key
+ * @param row
+ */
+public static void cache_row(String key, String[] row) { //function cache_row(key, row)
+    if (rowCache.put(key, row) == null) {
+        cacheBytes += cache_bytes(key, row);
+    } //end if
+    while (cacheBytes > cacheLimit && !rowCache.isEmpty()) {
+        Iterator<Map.Entry<String,String[]>> eldest = rowCache.entrySet().iterator();
+        Map.Entry<String,String[]> e = eldest.next();
+        cacheBytes -= cache_bytes(e.getKey(), e.getValue());
+        eldest.remove();
+        _cacheEvictions++;
+    } //end while
+} //end function { cache_row() }
+
+
+/**
+##########################################################
+# Purpose: The -X option. About how many bytes of heap a
+#          cached row takes, with its key and map entry.
+##########################################################
+ *
+ * @param key
+ * @param row
+ * @return
+ */
+public static long cache_bytes(String key, String[] row) { //function cache_bytes(key, row)
+    long bytes = 64 + 40 + 2L * key.length() + 16 + 4L * row.length;
+    for (String v : row) {
+        if (v != null) {
+            bytes += 40 + 2L * v.length();
+        } //end if
+    } //end for
+    return bytes;
+} //end function { cache_bytes() }
+
+
+/**
+##########################################################
+# Purpose: The -X option. Write the row cache's hit rate
+#          to the spreadsheet and stdout.
+##########################################################
+**/
+public static void report_cache() { //function report_cache()
+    if (rowCache == null) {
+        return;
+    } //end if
+    long lookups = _cacheHits + _cacheMisses;
+    String line = "TARGET row cache: "+_cacheHits+" hits of "+lookups+" lookups"+
+        String.format(" (%.1f%%)", (lookups > 0 ? 100.0 * _cacheHits / lookups : 0.0))+
+        ", "+_cacheEvictions+" evicted, "+rowCache.size()+" rows held in about "+
+        String.format("%.1f", cacheBytes / 1048576.0)+" of "+(cacheLimit / 1048576)+" MB.";
+    System.out.println(line);
+    spreadSheet.println(line);
+} //end function { report_cache() }
+
+
+/**
+##########################################################
+# Purpose: Just a place to keep this unweildy peice of 4GL code.
+#          Array t used to minimize the mess.
+##########################################################
+ *
+ * @param inputLine
+ * @return
+ */
+public static boolean fetch_target_row(String inputLine) {
+    int i;
+    long t0 = metric_start();
+    try { //whenever error do_nothing;
+        if (snapshot != null) {                         //# -K: found by open_cursor_with().
+            if (snapshotRow == null) {
+                return false;
+            } //end if
+            for (i=1; i<=tgtSelectCount; i++) {
+                t[tgtCol[i]] = snapshotRow[i-1];
+            } //end for
+            return true;
+        } //end if
+        if (targetCursor.next() == false) {
+            metric_stop(_pFetch, t0);
+            return false;
+        }
+        for (i=1; i<=tgtSelectCount; i++) {
+            t[tgtCol[i]] = targetCursor.getString(i); //# Fetch the target Cursor into the t array.
+        } //end for
+        metric_stop(_pFetch, t0);
+    } catch (SQLException e) {
+        System.out.println(
+            "Warning 4: SQLException ErrCode: SQLException ErrCode: "
+            +e.getErrorCode()+": "+e+
+            " Database fetch of input line no: "+ _rowsChecked
+            );
+        cacheKey = null;                        //# Not for the -X cache.
+        if (inputLine == null) {
+            inputLine = "" ;
+            for (i=1; i<=tgt_col_count; i++) {
+                inputLine += s[i]+"|";       //# Reassemble the input line.
+            } //end for
+        } //end if
+        System.out.println("Bad line: "+inputLine);
+        //throw e;
+        return false;
+    } catch (Exception e) {
+        System.out.println( "Error 78: fetch_keyed_row(): "+e);
+        //e.printStackTrace();
+        System.exit(78);
+    } finally { } //whenever error stop
+    return true;
+
+} //end function {  fetch_target_row()  }
+
+
+/**
+##########################################################
+# Purpose: Report the missing rows from TARGET.
+##########################################################
+ *
+ * @param aReason
+ * @param f
+ */
+public static void report_missing(String aReason ,SQLException f ) {
+    lineHasErr = true;                          //# Set the indicator.
+    if (f == null) {
+        _rowsMissing++;                         //# Not a failed lookup.
+    } //end if
+    String sheetLine ="";
+    for (int i=1; i<=_key_count; i++) {         //# The key from source.
+        sheetLine +=  s[key_pos[i]]+ "\t";
+    } //end for
+    try {
+        long t0 = metric_start();
+        spreadSheet.println(
+            sheetLine.trim()+"\t"+aReason.trim()+" "+f+"\t\t\t"+_rowsChecked);
+        metric_stop(_pWrite, t0);
+    } catch (Exception e) {
+        System.out.println( "Error 300: report_missing(): "+e);
+        //e.printStackTrace();
+        System.exit(300);
+    }
+    max_err_exit();
+} //end function {  report_missing()  }
+
+
+/**
+##########################################################
+# Purpose: Optionally treat text codes as numbers rather
+#     than as strings in order to determine a difference.
+// Even if it't character data, check if it is numeric.
+##########################################################
+ *
+ * @param i
+ */
+public static void clever_diff(int i) { //function clever_diff()
+    try {
         if (numericStringsOn) {
             if        ( ! is_numeric( t[i] )) { character_diff(i); return;
             } else if ( ! is_numeric( s[i] )) { character_diff(i); return;
@@ -1704,10 +4217,23 @@ public static void clever_diff(int i) { //function clever_diff()
  */
 public static boolean is_numeric( String s ) { //function is_numeric( t )
     try {
-        if ( s == null ||
-            s.trim().equals("") ||
-//          s.trim().matches( ".*[!-\"/*;-d:f-~() \t-].*" ) ) {
-            s.trim().matches( ".*[!-\"/*;-d:f-~() \t].*" ) ) {
+        if ( s == null || is_blank(s) ) {
+            return false;
+        } //end if
+        //# Once the regex: s.trim().matches( ".*[!-\"/*;-d:f-~() \t].*" ) meant not numeric.
+        boolean bad = false;
+        int from = 0, to = s.length();
+        while (s.charAt(from) <= ' ') { from++; }        //# Not blank, so these stop.
+        while (s.charAt(to-1) <= ' ') { to--; }
+        for (int k=from; k<to; k++) {
+            char ch = s.charAt(k);
+            if (is_line_terminator(ch)) {
+                return true;                            //# The regex could never match.
+            } //end if
+            bad |= (ch == ' ' || ch == '\t' || ch == '!' || ch == '"' || ch == '(' || ch == ')'
+                 || ch == '*' || ch == '/' || (ch >= ':' && ch <= 'd') || (ch >= 'f' && ch <= '~'));
+        } //end for
+        if (bad) {
             return false;
         } //end if
     } catch (Exception e) {
@@ -1732,6 +4258,11 @@ public static void report_inequality( int c_ ) { //function report_inequality( c
     String sheetLine="";
     lineHasErr = true;                       //# Set the indicator for lines/rows with errors.
     _columnsWithErrors++;
+    columnDiffRows[c_]++;
+    if (columnSummary[c_] == null) {
+        columnSummary[c_] = new ColumnSummary();
+    } //end if
+    columnSummary[c_].add(t[c_], s[c_], _comparisonType[c_] == _numeric);
     try {
         for (i=1; i<=_key_count; i++) {          //# The key from source.
             sheetLine += p[i].trim()+"\t";
@@ -1750,7 +4281,9 @@ public static void report_inequality( int c_ ) { //function report_inequality( c
             (dFmtT==null ? "Null" : dFmtT.toPattern())+"\t"+   //# Target date format.
             (dFmtS[c_]==null ? "Null" : dFmtS[c_].toPattern());//# Source date format.
         }
+        long t0 = metric_start();
         spreadSheet.println( sheetLine );
+        metric_stop(_pWrite, t0);
     } catch (Exception e) {
         System.out.println( "Error 79: report_inequality(): "+e);
         //e.printStackTrace();
@@ -1831,75 +4364,335 @@ public static void general_progress_check() { //function general_progress_check(
         end_main();
         System.exit(0); // normal exit.
     } //end if
-    if (( _rowsChecked % _progress_every == 0) || (_rowsChecked == 1 )) {
+    if (progressSeconds > 0) {
+        // Reported by live_progress() on the timer thread.
+    } else if (( _rowsChecked % _progress_every == 0) || (_rowsChecked == 1 )) {
         String msg = log_progress();
+        write_metrics();
+    } //end if
+} //end function { general_progress_check() }
+
+
+/**
+##########################################################
+# Purpose: Open the target cursor and Trap array boundary violations.
+# Retruns: True if a row was fetched.
+##########################################################
+ *
+ * @param keys_ the number of columns that make up the key.
+ * @return
+ */
+public static boolean open_cursor_with(int keys_) { //function open_cursor_with(keys_)
+    int i=0;
+    try { //whenever error do_nothing;
+        if (rowCache != null) {                         //# -X: looked up before?
+            StringBuilder key = new StringBuilder();
+            for (i=1;i<=keys_;i++) {
+                key.append(p[i].trim()).append('\0');
+            } //end for
+            cacheKey = key.toString();
+            cachedRow = rowCache.get(cacheKey);
+            if (cachedRow != null) {
+                _cacheHits++;
+                return true;
+            } //end if
+            _cacheMisses++;
+        } //end if
+        if (snapshot != null) {                         //# -K: a local lookup.
+            for (i=1;i<=keys_;i++) {
+                snapshotKey[i-1] = p[i];
+            } //end for
+            long t0 = metric_start();
+            snapshotRow = snapshot.lookup(snapshotKey);
+            metric_stop(_pLookup, t0);
+            return true;
+        } //end if
+        for (i=1;i<=keys_;i++) {                        //# NB See comment elsewhere in the code for an opportunity to improve performance.
+            bind_key(targetQueryPreped, i, p[i]);
+        } //end for
+        long t0 = metric_start();
+        targetCursor = targetQueryPreped.executeQuery();
+        metric_stop(_pLookup, t0);
+        _roundTrips++;
+    } catch (SQLException e) {
+        lookup_failed(keys_, e);
+        return false;
+    } catch (Exception e) {
+        System.out.println( "Error 80: open_cursor_with('"+keys_+" keys'): "+e);
+        //e.printStackTrace();
+        System.exit(80);
+    } finally { }
+    return true;
+} //end function {  open_cursor_with(keys_)  }
+
+
+/**
+##########################################################
+# Purpose: Find the JDBC type of each key column of the
+#          target query once, so bind_key() can bind it as
+#          that type. A string bound to a numeric or date key
+#          makes some databases convert the column, and then
+#          the primary key index is not used.
+#          From the prepared query's parameters if the driver
+#          knows them, else from the table's column meta data.
+##########################################################
+**/
+public static void resolve_key_types() { //function resolve_key_types()
+    for (int i=1; i<=_key_count; i++) {
+        keyJdbcType[i] = Types.VARCHAR;
+    } //end for
+    boolean found = false;
+    try {
+        ParameterMetaData params = targetQueryPreped.getParameterMetaData();
+        for (int i=1; i<=_key_count; i++) {
+            keyJdbcType[i] = params.getParameterType(i);
+        } //end for
+        found = true;
+    } catch (Exception e) {
+        // Not every driver describes parameters. Try the columns.
+    } catch (AbstractMethodError e) {
+        // A pre JDBC 3 driver.
+    }
+    if (!found) {
+        try {
+            DatabaseMetaData dbMeta = targetJdbcConn.getMetaData();
+            String table_ = targetTable.trim(), schema_ = null;
+            if (table_.indexOf('.') > 0) {
+                schema_ = table_.substring(0, table_.indexOf('.'));
+                table_ = table_.substring(table_.indexOf('.') + 1);
+            } //end if
+            for (int i=1; i<=_key_count; i++) {
+                keyJdbcType[i] = column_jdbc_type(dbMeta, schema_, table_, c[key_pos[i]].trim());
+            } //end for
+        } catch (SQLException e) {
+            System.out.println("Warning 160: resolve_key_types(): SQLException ErrCode: "
+                +e.getErrorCode()+": "+e+". Binding the keys as text.");
+        }
+    } //end if
+    String msg = "";
+    for (int i=1; i<=_key_count; i++) {
+        msg += " "+c[key_pos[i]].trim()+" as "+key_bind_name(keyJdbcType[i])+",";
+    } //end for
+    System.out.println(DateUtils.now("HH:mm:ss")+
+        " Binding the keys:"+msg.replaceAll(",$", "."));
+} //end function { resolve_key_types() }
+
+
+/**
+##########################################################
+# Purpose: The JDBC type of a column from the database meta
+#          data, trying the name as given, in upper and in
+#          lower case, as databases fold names either way.
+# Returns: java.sql.Types.VARCHAR if the column is not found.
+##########################################################
+ *
+ * @param dbMeta
+ * @param schema_
+ * @param table_
+ * @param column_
+ * @return
+ * @throws java.sql.SQLException
+ */
+public static int column_jdbc_type(DatabaseMetaData dbMeta, String schema_,
+        String table_, String column_) throws SQLException { //function column_jdbc_type()
+    String[][] names = {
+        {schema_, table_, column_},
+        {(schema_ == null ? null : schema_.toUpperCase()), table_.toUpperCase(), column_.toUpperCase()},
+        {(schema_ == null ? null : schema_.toLowerCase()), table_.toLowerCase(), column_.toLowerCase()}};
+    for (String[] name : names) {
+        ResultSet columns = dbMeta.getColumns(null, name[0], name[1], name[2]);
+        try {
+            if (columns.next()) {
+                return columns.getInt("DATA_TYPE");
+            } //end if
+        } finally {
+            columns.close();
+        }
+    } //end for
+    return Types.VARCHAR;
+} //end function { column_jdbc_type() }
+
+
+/**
+##########################################################
+# Purpose: How bind_key() binds a JDBC type, for the log.
+##########################################################
+ *
+ * @param type_
+ * @return
+ */
+public static String key_bind_name(int type_) { //function key_bind_name(type_)
+    switch (type_) {
+        case Types.TINYINT: case Types.SMALLINT: case Types.INTEGER: case Types.BIGINT:
+            return "integer";
+        case Types.NUMERIC: case Types.DECIMAL: case Types.REAL: case Types.FLOAT: case Types.DOUBLE:
+            return "number";
+        case Types.DATE:
+            return "date";
+        case Types.TIMESTAMP:
+            return "timestamp";
+        default:
+            return "text";
+    } // end switch
+} //end function { key_bind_name() }
+
+
+/**
+##########################################################
+# Purpose: Bind key element <i> with value <v> to <q> as the
+#          key column's type from resolve_key_types().
+##########################################################
+ *
+ * @param q
+ * @param i The key element number.
+ * @param v
+ * @throws java.sql.SQLException
+ */
+public static void bind_key(PreparedStatement q, int i, String v) throws SQLException { //function bind_key(q, i, v)
+    bind_typed(q, i, v.trim(), keyJdbcType[i], key_pos[i]);
+} //end function { bind_key() }
+
+
+/**
+##########################################################
+# Purpose: Bind <value> from column <col> to parameter <i> of
+#          <q> as JDBC type <type_>. A value that will not
+#          convert is bound as text, as before, so a key is
+#          still reported missing, not dropped.
+##########################################################
+ *
+ * @param q
+ * @param i The parameter number.
+ * @param value
+ * @param type_ One of java.sql.Types.
+ * @param col The column number, for its date format.
+ * @throws java.sql.SQLException
+ */
+public static void bind_typed(PreparedStatement q, int i, String value, int type_, int col)
+        throws SQLException { //function bind_typed(q, i, value, type_, col)
+    try {
+        switch (type_) {
+            case Types.TINYINT: case Types.SMALLINT: case Types.INTEGER: case Types.BIGINT:
+                q.setLong(i, Long.parseLong(value));
+                return;
+            case Types.NUMERIC: case Types.DECIMAL: case Types.REAL: case Types.FLOAT: case Types.DOUBLE:
+                q.setBigDecimal(i, new BigDecimal(value));
+                return;
+            case Types.DATE:
+                q.setDate(i, new java.sql.Date(column_date(col, value).getTime()));
+                return;
+            case Types.TIMESTAMP:
+                q.setTimestamp(i, new Timestamp(column_date(col, value).getTime()));
+                return;
+            default:
+                break; // switch
+        } // end switch
+    } catch (NumberFormatException e) {
+        // Not a number, so it can't match. Bind it as text below.
+    } catch (java.text.ParseException e) {
+        // Nor a date.
+    }
+    q.setString(i, value);
+} //end function { bind_typed() }
+
+
+/**
+##########################################################
+# Purpose: Parse a date from column <col> with the source
+#          column's date format, else the TARGET's. The whole
+#          value must parse, else a timestamp parsed as a date
+#          would be bound as midnight. The -L lookup threads
+#          can bind before the source formats are primed, so
+#          the value is then bound as text. A SimpleDateFormat
+#          is not thread safe, and the diff thread parses and
+#          primes the shared formats, so each thread parses
+#          with its own copy, see thread_date_format().
+##########################################################
+ *
+ * @param col
+ * @param value
+ * @return
+ * @throws java.text.ParseException
+ */
+public static Date column_date(int col, String value) throws java.text.ParseException { //function column_date(col, value)
+    SimpleDateFormat fmt = dFmtS[col];
+    if (fmt == null) {
+        fmt = dFmtT;
+    } //end if
+    java.text.ParsePosition at = new java.text.ParsePosition(0);
+    Date date = thread_date_format(fmt).parse(value, at);
+    if (date == null || at.getIndex() < value.length()) {
+        throw new java.text.ParseException("Not a date: "+value, at.getIndex());
+    } //end if
+    return date;
+} //end function { column_date() }
+
+
+/**
+##########################################################
+# Purpose: This thread's own copy of the shared date format
+#          <fmt>, made from its pattern the first time. A
+#          primed column gets a new format, and so a new copy.
+##########################################################
+ *
+ * @param fmt
+ * @return
+ */
+public static SimpleDateFormat thread_date_format(SimpleDateFormat fmt) { //function thread_date_format(fmt)
+    Map<SimpleDateFormat, SimpleDateFormat> own = threadDateFormats.get();
+    SimpleDateFormat copy = own.get(fmt);
+    if (copy == null) {
+        copy = new SimpleDateFormat(fmt.toPattern());
+        own.put(fmt, copy);
     } //end if
-} //end function { general_progress_check() }
+    return copy;
+} //end function { thread_date_format() }
 
 
 /**
 ##########################################################
-# Purpose: Open the target cursor and Trap array boundary violations.
-# Retruns: True if a row was fetched.
+# Purpose: Report a target lookup that failed with <e>.
 ##########################################################
  *
  * @param keys_ the number of columns that make up the key.
- * @return
+ * @param e
  */
-public static boolean open_cursor_with(int keys_) { //function open_cursor_with(keys_)
-    int i=0;
-    try { //whenever error do_nothing;
-        if (keys_ > maxKeys) {
-            System.out.println("Error 3: Recompile this program"+
-            " to take "+keys_+ " columns in the maxKeys variable.");
-            System.exit(3);
-        } //end if
-        for (i=1;i<=keys_;i++) {                        //# NB See comment elsewhere in the code for an opportunity to improve performance.
-            targetQueryPreped.setString(i,p[i].trim());
+public static void lookup_failed(int keys_, SQLException e) { //function lookup_failed(keys_, e)
+    int i;
+    report_missing(e.getMessage(),e);
+    if (!(suppressWarnings)) {
+        System.out.println(
+            "\nWarning 5: Target open_cursor_with('"+keys_+
+            (keys_== 1 ? " key" : " keys" )+"'): SQLException ErrCode: "
+            +e.getErrorCode()+": "+e+
+            "\n       This error happens while trying to look up a target row."+
+            "\n       Hint 1: Run the target query from the \""+targetTable+
+                ".meta_qa.sql\" file substituting the \"?\" for the keys below."+
+            "\n       You may have to modify the source format of dates in the key."+
+            "\n       Hint 2: You can Google this error message for help..."+
+            "\n       Hint 3: You can suppress this message with the -w option."+
+            "\n Target Table: "+ targetTable.trim()+
+            "\n   Input File: "+ inputFileName.trim()+
+            "\n    Record No: "+ _rowsChecked
+            );
+        String msg ="";                                 //# Show keys.
+        for (i=1; i<=_key_count; i++) {
+            msg += c[i].trim()+" ";
         } //end for
-        targetCursor = targetQueryPreped.executeQuery();
-    } catch (SQLException e) {
-        report_missing(e.getMessage(),e);
-        if (!(suppressWarnings)) {
-            System.out.println(
-                "\nWarning 5: Target open_cursor_with('"+keys_+
-                (keys_== 1 ? " key" : " keys" )+"'): SQLException ErrCode: "
-                +e.getErrorCode()+": "+e+
-                "\n       This error happens while trying to look up a target row."+
-                "\n       Hint 1: Run the target query from the \""+targetTable+
-                    ".meta_qa.sql\" file substituting the \"?\" for the keys below."+
-                "\n       You may have to modify the source format of dates in the key."+
-                "\n       Hint 2: You can Google this error message for help..."+
-                "\n       Hint 3: You can suppress this message with the -w option."+
-                "\n Target Table: "+ targetTable.trim()+
-                "\n   Input File: "+ inputFileName.trim()+
-                "\n    Record No: "+ _rowsChecked
-                );
-            String msg ="";                                 //# Show keys.
-            for (i=1; i<=_key_count; i++) {
-                msg += c[i].trim()+" ";
-            } //end for
-            System.out.println("      Key Col: "+msg.trim());
-            msg="";                                         //# Show Values.
-            for (i=1; i<=_key_count; i++) {
-                msg += p[i]+" ";
-            } //end for
-            System.out.println("      Key Val: "+msg.trim());
-            msg="";                                         //# Show Data.
-            for (i=1;i<=src_field_count;i++) {
-                msg = msg + (s[i] == null ? "" : s[i].trim() )+"|";
-            } // end for
-            System.out.println("         Data: "+msg.trim());
-        }
-        max_err_exit();
-        return false;
-    } catch (Exception e) {
-        System.out.println( "Error 80: open_cursor_with('"+keys_+" keys'): "+e);
-        //e.printStackTrace();
-        System.exit(80);
-    } finally { }
-    return true;
-} //end function {  open_cursor_with(keys_)  }
+        System.out.println("      Key Col: "+msg.trim());
+        msg="";                                         //# Show Values.
+        for (i=1; i<=_key_count; i++) {
+            msg += p[i]+" ";
+        } //end for
+        System.out.println("      Key Val: "+msg.trim());
+        msg="";                                         //# Show Data.
+        for (i=1;i<=src_field_count;i++) {
+            msg = msg + (s[i] == null ? "" : s[i].trim() )+"|";
+        } // end for
+        System.out.println("         Data: "+msg.trim());
+    }
+    max_err_exit();
+} //end function { lookup_failed() }
 
 /**
 ##########################################################
@@ -1910,17 +4703,15 @@ public static boolean open_cursor_with(int keys_) { //function open_cursor_with(
  * @param keys_
  */
 public static void save_key_for_reverse_compare(int keys_) { //function save_key_for_reverse_compare(keys_)
-    if (keys_ > maxKeys) {
-        System.out.println("Error 30: Recompile this program"+
-        " to take "+keys_+ " columns in the maxKeys variable.");
-        System.exit(30); //exit program 30
-    } //end if
     try { //whenever error do_nothing;
         //# Max keys per table found in meta-data was 13 at the time of writing this program.
         for (int i=1; i<=_key_count; i++) {
             reverseKeyUpd.setObject(i,p[i]);
         } //end for
+        long t0 = metric_start();
         reverseKeyUpd.executeUpdate();
+        metric_stop(_pReverseInsert, t0);
+        _roundTrips++;
     } catch (SQLException e) {
         System.out.println(
             "Error 0: Inserting reverse check key: SQLException ErrCode: "
@@ -1958,6 +4749,21 @@ public static void save_key_for_reverse_compare(int keys_) { //function save_key
 **/
 public static void max_err_exit() { //function max_err_exit()
 int m = (_rowsWithErrors + _columnsWithErrors + _missingRowsInReverseCompare);
+    if (m >= _max_err && pastMaxErr) {
+        if (reportSheet == null) {                 //# -N: the lines stop, the audit goes on.
+            String msg= "Maximum errors parameter was reached: "+ m+
+                ". Continuing for the summary only.";
+            System.out.println( msg );
+            spreadSheet.println( msg );
+            reportSheet = spreadSheet;
+            spreadSheet = new PrintWriter(new Writer() {
+                public void write(char[] cbuf, int off, int len) { }
+                public void flush() { }
+                public void close() { }
+            });
+        } //end if
+        return;
+    } //end if
     if (m >= _max_err) {
         String msg= "Maximum errors parameter was reached: "+ m;
         System.out.println( msg );
@@ -1981,10 +4787,22 @@ int m = (_rowsWithErrors + _columnsWithErrors + _missingRowsInReverseCompare);
 public static void end_main() { //function end_main()
     int i;
     String txt = null;
+    if (progressTimer != null) {
+        synchronized (Metaqa.class) {           //# Waits for a live_progress() tick that is running.
+            progressTimer.cancel();
+            progressTimer = null;               //# A tick already due returns without reporting.
+        }
+    } //end if
     try {
+        if (reportSheet != null) {              //# -N: the summary goes in the spreadsheet again.
+            spreadSheet = reportSheet;
+        } //end if
         spreadSheet.println( "End of data." );
         spreadSheet.println( "Statistics of the run:" );
         spreadSheet.println( log_progress().trim() );
+        report_sample();
+        report_cache();
+        report_column_summary();
         txt= DateUtils.now("HH:mm:ss")+ //"yyyy-MM-dd HH:mm:ss"
                 " Program ended normally checking table:  "+ targetTable.trim();
         System.out.println(txt);
@@ -1992,28 +4810,24 @@ public static void end_main() { //function end_main()
         txt = null;
 
         spreadSheet.println( "Columns audited in this run: " ); //# Show columns audited and not audited in this run.
-        _scratch=
-            "select field_name "+
-            " from meta_dwh_table_field "+
-            " where lower(table_name) = lower('"+ targetTable.trim()+"')"+
-            "   and lower(source_system_name) like lower('*"+sourceSystem.trim()+"*')"+
-            "   and lower(field_name) not in ('";
+        HashSet<String> audited = new HashSet<String>();
         String inList = "";
         for (i=1; i<=tgt_col_count; i++) {
-            _scratch= _scratch.trim()+c[i].trim().toLowerCase()+"','";
+            if (columnSkipped[i]) {
+                continue; // for
+            } //end if
+            audited.add(c[i].trim().toLowerCase());
             inList = inList+ c[i].trim().toLowerCase()+ ", ";
         } //end for
-        _scratch = _scratch.replaceAll(",'$","")+ ")"+ " order by design_sequence;";
         spreadSheet.println( inList.replaceAll(", $",".") ); //relace final comma with "."
-        //# Incase this table is not in this database...;
-        metaColsNotAuditedPrep = metaJdbcConn.prepareStatement(_scratch);
-        ResultSet not_meta_c = metaColsNotAuditedPrep.executeQuery();
         _scratch="";
-        while (not_meta_c.next()) { //Loop through the cursor.
-            targetColumn = not_meta_c.getString(1);
-            _scratch+=targetColumn+", ";
-        } //end while
-        not_meta_c.close();
+        for (String[] row : metaRows) {      //# Already in design_sequence order.
+            targetColumn = row[_mField];
+            if (targetColumn != null && meta_system_like(row)
+                && !audited.contains(targetColumn.trim().toLowerCase())) {
+                _scratch+=targetColumn+", ";
+            } //end if
+        } //end for
         spreadSheet.println( "Columns in meta data not audited in this run: \n"+
             _scratch.trim().replaceAll(", $", ".") );
 
@@ -2025,6 +4839,7 @@ public static void end_main() { //function end_main()
         spreadSheet.println( _scratch.trim() );
         spreadSheet.flush();
         spreadSheet.close(); // The file should be released here, but is not always the case.
+        write_metrics();
         File auditLogFile = new File( "meta_qa.log" );
         if (!(auditLogFile.exists())) { // http://www.rgagnon.com/javadetails/java-0070.html
             logFile = new PrintWriter(
@@ -2062,10 +4877,6 @@ public static void end_main() { //function end_main()
             transactionType.trim()             //# The unique AIT transaction type.
             );
         logFile.close();
-    } catch (SQLException e) {
-        System.out.println( "Error 447: end_main(): SQLException ErrCode: "
-            +e.getErrorCode()+": "+e);
-        System.exit(447);
     } catch (IOException e) {
         System.out.println( "Error 448: end_main(): "+e);
         System.exit(448);
@@ -2077,6 +4888,442 @@ public static void end_main() { //function end_main()
 } //end function { end_main() }
 
 
+/**
+##########################################################
+# Purpose: Start timing a phase. Costs nothing without -P or -R.
+# Returns: The start time for metric_stop().
+##########################################################
+ *
+ * @return
+ */
+public static long metric_start() { //function metric_start()
+    return ((metricsOn || progressSeconds > 0) ? System.nanoTime() : 0);
+} //end function { metric_start() }
+
+
+/**
+##########################################################
+# Purpose: Add the time since <t0> to a phase, and count it.
+##########################################################
+ *
+ * @param phase One of the _p... constants.
+ * @param t0 From metric_start().
+ */
+public static void metric_stop(int phase, long t0) { //function metric_stop(phase, t0)
+    if (metricsOn || progressSeconds > 0) {
+        metric_add(phase, System.nanoTime() - t0);
+    } //end if
+} //end function { metric_stop() }
+
+
+/**
+##########################################################
+# Purpose: Add <ns> nano seconds to a phase, and count it.
+##########################################################
+ *
+ * @param phase One of the _p... constants.
+ * @param ns
+ */
+public static void metric_add(int phase, long ns) { //function metric_add(phase, ns)
+    if (phase == _pLookup && progressSeconds > 0) {  //# For the -R rolling latency.
+        lookupRing[lookupRingNext] = ns;
+        lookupRingNext = (lookupRingNext + 1) % lookupRing.length;
+        lookupRingFull |= (lookupRingNext == 0);
+    } //end if
+    if (metricsOn) {
+        phaseNanos[phase] += ns;
+        phaseCount[phase]++;
+        if (phase == _pLookup) {                     //# Also into the latency histogram.
+            double secs = ns / 1e9;
+            int b = 0;
+            while (b < lookupBucket.length && secs > lookupBucket[b]) {
+                b++;
+            } //end while
+            lookupHist[b]++;
+        } //end if
+    } //end if
+} //end function { metric_add() }
+
+
+/**
+##########################################################
+# Purpose: Write the -P metrics file. JSON if it is named
+#          *.json, else Prometheus text exposition format.
+#          Written to a .tmp file and moved over the file in
+#          one step, so a reader never sees half a file, nor
+#          finds it missing. Synchronized, because the
+#          -R timer thread writes it too.
+##########################################################
+**/
+public static synchronized void write_metrics() { //function write_metrics()
+    if (!metricsOn) {
+        return;
+    } //end if
+    double elapsed = (new Date().getTime() - startTime.getTime()) / 1000.0;
+    String[] countName = {"rows_checked", "columns_checked", "rows_with_errors",
+        "columns_with_errors", "reverse_missing_rows", "round_trips"};
+    long[] count = {_rowsChecked, _nonKeyColsAudited, _rowsWithErrors,
+        _columnsWithErrors, _missingRowsInReverseCompare, _roundTrips};
+    StringBuilder m = new StringBuilder(4096);
+    if (metricsFileName.toLowerCase().endsWith(".json")) {
+        m.append("{\"version\": \"").append(_version).append("\",")
+         .append(" \"table\": \"").append(targetTable.trim()).append("\",")
+         .append(" \"elapsed_seconds\": ").append(elapsed).append(",\n");
+        for (int k=0; k<count.length; k++) {
+            m.append(" \"").append(countName[k]).append("\": ").append(count[k]).append(",\n");
+        } //end for
+        m.append(" \"phases\": {");
+        for (int k=0; k<_phases; k++) {
+            m.append(k == 0 ? "\n" : ",\n")
+             .append("  \"").append(phaseName[k]).append("\": {\"seconds\": ")
+             .append(phaseNanos[k] / 1e9).append(", \"count\": ").append(phaseCount[k]).append("}");
+        } //end for
+        m.append("},\n \"target_lookup_seconds\": {\"count\": ").append(phaseCount[_pLookup])
+         .append(", \"sum\": ").append(phaseNanos[_pLookup] / 1e9).append(", \"buckets\": {");
+        long cumulative = 0;
+        for (int b=0; b<=lookupBucket.length; b++) {
+            cumulative += lookupHist[b];
+            m.append(b == 0 ? "" : ", ").append('"')
+             .append(b < lookupBucket.length ? String.valueOf(lookupBucket[b]) : "+Inf")
+             .append("\": ").append(cumulative);
+        } //end for
+        m.append("}}\n}\n");
+    } else {
+        String table = "{table=\""+targetTable.trim()+"\"";
+        m.append("# HELP metaqa_elapsed_seconds Seconds since the start of the run.\n")
+         .append("# TYPE metaqa_elapsed_seconds gauge\n")
+         .append("metaqa_elapsed_seconds").append(table).append("} ").append(elapsed).append('\n');
+        for (int k=0; k<count.length; k++) {
+            m.append("# TYPE metaqa_").append(countName[k]).append("_total counter\n")
+             .append("metaqa_").append(countName[k]).append("_total").append(table).append("} ")
+             .append(count[k]).append('\n');
+        } //end for
+        m.append("# HELP metaqa_phase_seconds_total Seconds spent in each phase of the audit.\n")
+         .append("# TYPE metaqa_phase_seconds_total counter\n");
+        for (int k=0; k<_phases; k++) {
+            m.append("metaqa_phase_seconds_total").append(table).append(",phase=\"")
+             .append(phaseName[k]).append("\"} ").append(phaseNanos[k] / 1e9).append('\n');
+        } //end for
+        m.append("# TYPE metaqa_phase_calls_total counter\n");
+        for (int k=0; k<_phases; k++) {
+            m.append("metaqa_phase_calls_total").append(table).append(",phase=\"")
+             .append(phaseName[k]).append("\"} ").append(phaseCount[k]).append('\n');
+        } //end for
+        m.append("# HELP metaqa_target_lookup_seconds Latency of the target row lookups.\n")
+         .append("# TYPE metaqa_target_lookup_seconds histogram\n");
+        long cumulative = 0;
+        for (int b=0; b<=lookupBucket.length; b++) {
+            cumulative += lookupHist[b];
+            m.append("metaqa_target_lookup_seconds_bucket").append(table).append(",le=\"")
+             .append(b < lookupBucket.length ? String.valueOf(lookupBucket[b]) : "+Inf")
+             .append("\"} ").append(cumulative).append('\n');
+        } //end for
+        m.append("metaqa_target_lookup_seconds_sum").append(table).append("} ")
+         .append(phaseNanos[_pLookup] / 1e9).append('\n')
+         .append("metaqa_target_lookup_seconds_count").append(table).append("} ")
+         .append(phaseCount[_pLookup]).append('\n');
+    } //end if
+    try {
+        File done = new File(metricsFileName);
+        File tmp = new File(metricsFileName+".tmp");
+        Writer out = new BufferedWriter(new FileWriter(tmp, false));
+        out.write(m.toString());
+        out.close();
+        try {
+            Files.move(tmp.toPath(), done.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Warning 150: write_metrics(): Could not rename "+tmp+" to "+done+": "+e);
+        }
+    } catch (IOException e) {
+        System.out.println("Warning 151: write_metrics(): "+e+": "+metricsFileName);
+    }
+} //end function { write_metrics() }
+
+
+/**
+##########################################################
+# Purpose: The -R option. Report progress from a timer
+#          thread every <progressSeconds>, so the main loop
+#          does no reporting and the reports stay regular
+#          when rows are slow.
+##########################################################
+**/
+public static void start_progress_timer() { //function start_progress_timer()
+    if (progressSeconds <= 0) {
+        return;
+    } //end if
+    progress_sample(System.currentTimeMillis(), 0, 0);
+    progressTimer = new java.util.Timer("metaqa progress", true);
+    progressTimer.schedule(new TimerTask() {
+        public void run() {
+            live_progress();
+        }
+    }, progressSeconds * 1000L, progressSeconds * 1000L);
+} //end function { start_progress_timer() }
+
+
+/**
+##########################################################
+# Purpose: Keep a sample of progress in the sliding window.
+# Returns: The oldest sample still in the window.
+##########################################################
+ *
+ * @param now
+ * @param rows
+ * @param done
+ * @return
+ */
+public static int progress_sample(long now, int rows, double done) { //function progress_sample()
+    int w = progressAt.length;
+    int k = progressSamples % w;
+    progressAt[k] = now;
+    progressRows[k] = rows;
+    progressDone[k] = done;
+    progressSamples++;
+    return (progressSamples <= w ? 0 : (k+1) % w);
+} //end function { progress_sample() }
+
+
+/**
+##########################################################
+# Purpose: Print one progress line with the rows per second
+#          over the window, the percentage done and ETA if
+#          known, and the rolling target lookup latency.
+#          Runs on the timer thread, until end_main() stops it.
+##########################################################
+**/
+public static synchronized void live_progress() { //function live_progress()
+    if (progressTimer == null) {
+        return;                                      //# The run has ended.
+    } //end if
+    long now = System.currentTimeMillis();
+    int rows = _rowsChecked;
+    double done = -1;                                //# Fraction done, -1 if unknown.
+    try {
+        if (sourceFileStream != null && sourceFileBytes > 0) {
+            done = (double) sourceFileStream.getChannel().position() / sourceFileBytes;
+        } else if (sourceRowTotal > 0) {
+            done = (double) rows / sourceRowTotal;
+        } //end if
+    } catch (IOException e) {
+        // Unknown then.
+    }
+    int old = progress_sample(now, rows, done);
+    double secs = (now - progressAt[old]) / 1000.0;
+    String msg = DateUtils.now("HH:mm:ss")+
+        " Rows checked: "+rows+
+        String.format(", %.0f rows/s", (secs > 0 ? (rows - progressRows[old]) / secs : 0.0));
+    if (done >= 0) {
+        msg += String.format(", %.1f%% done", Math.min(done, 1.0) * 100);
+        double perSec = (secs > 0 ? (done - progressDone[old]) / secs : 0);
+        if (perSec > 0) {
+            long eta = (long) ((1.0 - done) / perSec);
+            msg += String.format(", ETA %02d:%02d:%02d", eta / 3600, (eta / 60) % 60, eta % 60);
+        } //end if
+    } //end if
+    int n = (lookupRingFull ? lookupRing.length : lookupRingNext);
+    if (n > 0) {
+        long[] lat = Arrays.copyOf(lookupRing, n);
+        Arrays.sort(lat);
+        msg += String.format(", lookup p50 %.2f ms, p99 %.2f ms",
+            lat[(n-1) * 50 / 100] / 1e6, lat[(n-1) * 99 / 100] / 1e6);
+    } //end if
+    msg += ", Total of all errors: "+
+        (_rowsWithErrors+_columnsWithErrors+_missingRowsInReverseCompare);
+    System.out.println(msg);
+    write_metrics();
+} //end function { live_progress() }
+
+
+/**
+##########################################################
+# Purpose: The -C option. Count the rows of the source
+#          query, for the percentage done.
+# Returns: The count, or -1 if the database will not say.
+##########################################################
+ *
+ * @param query_
+ * @return
+ */
+public static long count_source_rows(String query_) { //function count_source_rows(query_)
+    try {
+        Statement countStmt = sourceJdbcConn.createStatement();
+        ResultSet countCursor = countStmt.executeQuery(
+            "select count(*) from ("+query_+") metaqa_count");
+        long n = (countCursor.next() ? countCursor.getLong(1) : -1);
+        countStmt.close();
+        System.out.println(DateUtils.now("HH:mm:ss")+
+            " The source query has "+n+" rows.");
+        return n;
+    } catch (SQLException e) {
+        System.out.println("Warning 152: count_source_rows(): SQLException ErrCode: "
+            +e.getErrorCode()+": "+e+". Continuing without the percentage done.");
+    }
+    return -1;
+} //end function { count_source_rows() }
+
+
+/**
+##########################################################
+# Purpose: The -S option. Is the key in <keys_>[1..n] in the
+#          sample? A hash of the trimmed key text and the seed,
+#          so the same keys are audited on every run, from a
+#          flat-file or a query, in any order.
+##########################################################
+ *
+ * @param keys_
+ * @param n
+ * @return
+ */
+public static boolean in_sample(String[] keys_, int n) { //function in_sample(keys_, n)
+    long h = 0xcbf29ce484222325L ^ sampleSeed;          //# FNV-1a over the key text,
+    for (int i=1; i<=n; i++) {
+        String k = (keys_[i] == null ? "" : keys_[i]);
+        int from = 0, to = k.length();
+        while (from < to && k.charAt(from) <= ' ') { from++; }
+        while (to > from && k.charAt(to-1) <= ' ') { to--; }
+        for (int j=from; j<to; j++) {
+            h ^= k.charAt(j);
+            h *= 0x100000001b3L;
+        } //end for
+        h ^= '|';
+        h *= 0x100000001b3L;
+    } //end for
+    h ^= (h >>> 33);                                    //# then mixed, so that
+    h *= 0xff51afd7ed558ccdL;                           //# near keys land far apart.
+    h ^= (h >>> 33);
+    return (h >>> 1) % sampleSpace < sampleBound;
+} //end function { in_sample() }
+
+
+/**
+##########################################################
+# Purpose: The -S option with a .sql input-file. Open the
+#          source cursor on only the sampled rows, when the
+#          first key column is numeric, so the source database
+#          does not send the rest. The key is scattered by a
+#          multiplier near 10000 / golden ratio, so that runs of
+#          keys are sampled evenly, not in blocks:
+#            mod(mod(abs(key), 10000) * 6181 + seed, 10000) < bound
+#          This picks other keys than in_sample() does.
+# Returns: The query the cursor was opened on, or <query_>
+#          unopened if the database would not run it, and
+#          in_sample() then picks the keys as they are read.
+##########################################################
+ *
+ * @param query_
+ * @return
+ */
+public static String sampled_source_query(String query_) { //function sampled_source_query(query_)
+    String key_ = c[key_pos[1]];
+    if (key_ == null || _comparisonType[key_pos[1]] != _numeric) {
+        return query_;
+    } //end if
+    long seed = ((sampleSeed % sampleSpace) + sampleSpace) % sampleSpace;
+    String sampled = "select * from ("+query_+") metaqa_sample"+
+        " where mod(mod(abs("+key_+"), "+sampleSpace+") * 6181 + "+seed+", "+sampleSpace+")"+
+        " < "+sampleBound;
+    try {
+        _roundTrips++;
+        sourceCursor = sourceJdbcConn.createStatement().executeQuery(sampled);
+        samplePushedDown = true;
+        System.out.println(DateUtils.now("HH:mm:ss")+
+            " Sampling in the source query on "+key_+":\n\t "+sampled);
+        return sampled;
+    } catch (SQLException e) {
+        System.out.println("Warning 158: sampled_source_query(): SQLException ErrCode: "
+            +e.getErrorCode()+": "+e+". Sampling the keys as they are read instead.");
+    }
+    return query_;
+} //end function { sampled_source_query() }
+
+
+/**
+##########################################################
+# Purpose: The 95% confidence interval of the rate <k>/<n>,
+#          by Wilson's score method, which holds for the
+#          small and zero counts a clean table gives.
+# Returns: { low, high } as percentages.
+##########################################################
+ *
+ * @param k
+ * @param n
+ * @return
+ */
+public static double[] rate_interval(long k, long n) { //function rate_interval(k, n)
+    if (n <= 0) {
+        return new double[] {0, 100};
+    } //end if
+    double z = 1.96, rate = (double) k / n, zz = z * z / n;
+    double centre = (rate + zz / 2) / (1 + zz);
+    double half = z * Math.sqrt(rate * (1 - rate) / n + zz / (4.0 * n)) / (1 + zz);
+    return new double[] {Math.max(0, centre - half) * 100, Math.min(1, centre + half) * 100};
+} //end function { rate_interval() }
+
+
+/**
+##########################################################
+# Purpose: The -S option. Write the estimated error rate of
+#          the missing rows and of each column that differed,
+#          with its confidence interval, and the rows that would
+#          differ in a full audit, to the spreadsheet and stdout.
+##########################################################
+**/
+public static void report_sample() { //function report_sample()
+    if (samplePercent <= 0) {
+        return;
+    } //end if
+    long found = _rowsAudited - _rowsMissing;           //# Rows with columns compared.
+    long population = (samplePushedDown ? -1 : _rowsChecked - _jump_over_lines);
+    long present = (population < 0 || _rowsAudited == 0    //# Of them, estimated in TARGET.
+        ? population : Math.round((double) population * found / _rowsAudited));
+    List<String> lines = new ArrayList<String>();
+    lines.add("Sample audit of "+_rowsAudited+" rows, about "+samplePercent+"% of the keys"+
+        " with seed "+sampleSeed+(samplePushedDown
+            ? ", chosen by the source query."
+            : ", chosen from "+population+" rows read."));
+    lines.add("Estimated error rates with 95% confidence intervals:");
+    lines.add("Column\tRows differing\tRows compared\tRate %\tLow %\tHigh %\tEstimated rows in a full audit");
+    lines.add(sample_line("(missing from TARGET)", _rowsMissing, _rowsAudited, population));
+    int clean = 0;
+    for (int i=1; i<=tgt_col_count; i++) {
+        if (columnDiffRows[i] > 0) {
+            lines.add(sample_line(c[i].trim(), columnDiffRows[i], found, present));
+        } else if (!isKeyColumn[i] && !columnSkipped[i]) {
+            clean++;
+        } //end if
+    } //end for
+    if (clean > 0) {
+        lines.add(sample_line("(each of the other "+clean+" columns)", 0, found, present));
+    } //end if
+    for (String line : lines) {
+        System.out.println(line);
+        spreadSheet.println(line);
+    } //end for
+} //end function { report_sample() }
+
+
+/**
+##########################################################
+# Purpose: One tab delimited line of report_sample().
+##########################################################
+ *
+ * @param name_
+ * @param k
+ * @param n
+ * @param population
+ * @return
+ */
+public static String sample_line(String name_, long k, long n, long population) { //function sample_line()
+    double[] ci = rate_interval(k, n);
+    double rate = (n > 0 ? 100.0 * k / n : 0);
+    return name_+"\t"+k+"\t"+n+"\t"+
+        String.format("%.4f\t%.4f\t%.4f", rate, ci[0], ci[1])+"\t"+
+        (population < 0 ? "" : String.valueOf(Math.round(rate / 100 * population)));
+} //end function { sample_line() }
+
+
 /**
 ##########################################################
 # Purpose: Log elapsed time.
@@ -2154,89 +5401,104 @@ coauthor        1529/udp        # oracle
 public static void prepare_meta_qa() throws IOException {
     System.out.println(DateUtils.now("yyyy-MM-dd HH:mm:ss")+
             " Now auditing table: " + targetTable);
-    try { //# Make the Meta-data DB connection.
+    boolean metaFromCache = (metaCacheMinutes > 0 && read_meta_data_cache());
+    if (targetFileName != null) {
         System.out.println(DateUtils.now("HH:mm:ss")+
-                " Loading meta-data JDBC driver: "+metaJdbcDriver);
-        Class.forName(metaJdbcDriver);                         //# Load the meta-data JDBC Driver.
-        System.out.println(DateUtils.now("HH:mm:ss")+
-                " Using JDBC url: "+metaJdbcUrl+
-                "\n\t and Connecting as user: "+
-                metaJdbcUserId);
-        metaJdbcConn = DriverManager.getConnection(            //# Make the connection to the database.
-                metaJdbcUrl, metaJdbcUserId, metaJdbcPassword);
-        if (metaJdbcDriver.toLowerCase().matches(".*oracle.*")) {
-            metaJdbcConn.setTransactionIsolation(               //# http://www.orafaq.com/node/37
-                metaJdbcConn.TRANSACTION_READ_COMMITTED);
-        } else {
-            metaJdbcConn.setTransactionIsolation(               //# http://www.orafaq.com/node/37
-                metaJdbcConn.TRANSACTION_READ_UNCOMMITTED);
-        }
-    } catch (ClassNotFoundException e) {
-        System.out.println("Error 341: prepare_meta_qa(): "+e);
-    } catch (ExceptionInInitializerError e) {
-        System.out.println("Error 342: prepare_meta_qa(): "+e);
-    } catch (LinkageError e) {
-        System.out.println("Error 344: prepare_meta_qa(): "+e);
-    } catch (SQLException e) {
-        System.out.println("Error 345: prepare_meta_qa(): SQLException ErrCode: "
-            +e.getErrorCode()+": "+e);
-        System.exit(345);
-    } catch (Exception e) {
-        System.out.println("Error 346: prepare_meta_qa(): "+e);
-        System.exit(346);
-    } finally { } //end finally
-
-    try { //# Make the target DB connection.
-        if (   targetJdbcDriver  .equals(metaJdbcDriver)
-            && targetJdbcUrl     .equals(metaJdbcUrl)
-            && targetJdbcUserId  .equals(metaJdbcUserId)
-            )
-        {
-            System.out.println(DateUtils.now("HH:mm:ss")+
-                " Reusing the meta-data connection for target data.");
-            targetJdbcConn = metaJdbcConn;
-        } else {
+                " Comparing to the TARGET data-file: "+targetFileName+", without a dBase.");
+    } //end if
+    if (!metaFromCache && targetFileName == null) {
+        try { //# Make the Meta-data DB connection.
             System.out.println(DateUtils.now("HH:mm:ss")+
-                " Loading target JDBC driver: "+targetJdbcDriver);
-            Class.forName(targetJdbcDriver);                    //# Load the  JDBC Driver.
+                    " Loading meta-data JDBC driver: "+metaJdbcDriver);
+            Class.forName(metaJdbcDriver);                         //# Load the meta-data JDBC Driver.
             System.out.println(DateUtils.now("HH:mm:ss")+
-                " Using JDBC url: "+targetJdbcUrl+
-                "\n\t and Connecting as user: "+
-                targetJdbcUserId);
-            targetJdbcConn = DriverManager.getConnection(       //# Make the connection to the database.
-                targetJdbcUrl, targetJdbcUserId,
-                targetJdbcPassword);
-        }
-        if (targetJdbcDriver.toLowerCase().matches(".*oracle.*")) {
-            targetJdbcConn.setTransactionIsolation(             //# http://www.orafaq.com/node/37
-                targetJdbcConn.TRANSACTION_READ_COMMITTED);
-// Set the target DBdate format.  Unfortunately the Oracle JDBC driver seems to ignote this statement. Pity!
-//            if (dFmtT != null) {
-//                processSqlStatement(
-//                    ("alter session set NLS_DATE_FORMAT='"
-//                    +dFmtT.toPattern()+"'") ,targetJdbcConn );
-//            }
-        } else {
-            targetJdbcConn.setTransactionIsolation(             //# http://www.orafaq.com/node/37
-                targetJdbcConn.TRANSACTION_READ_UNCOMMITTED);
-        }
-    } catch (ClassNotFoundException e) {
-        System.out.println("Error 311: prepare_meta_qa(): "+e);
-    } catch (ExceptionInInitializerError e) {
-        System.out.println("Error 312: prepare_meta_qa(): "+e);
-    } catch (LinkageError e) {
-        System.out.println("Error 314: prepare_meta_qa(): "+e);
-    } catch (SQLException e) {
-        System.out.println("Error 315: prepare_meta_qa(): SQLException ErrCode: "
-            +e.getErrorCode()+": "+e);
-        System.exit(315);
-    } catch (Exception e) {
-        System.out.println( "Error 316: prepare_meta_qa(): "+e);
-        e.printStackTrace();
-        System.exit(316);
-    } finally { } //end finally
+                    " Using JDBC url: "+metaJdbcUrl+
+                    "\n\t and Connecting as user: "+
+                    metaJdbcUserId);
+            metaJdbcConn = DriverManager.getConnection(            //# Make the connection to the database.
+                    metaJdbcUrl, metaJdbcUserId, metaJdbcPassword);
+            if (metaJdbcDriver.toLowerCase().matches(".*oracle.*")) {
+                metaJdbcConn.setTransactionIsolation(               //# http://www.orafaq.com/node/37
+                    metaJdbcConn.TRANSACTION_READ_COMMITTED);
+            } else {
+                metaJdbcConn.setTransactionIsolation(               //# http://www.orafaq.com/node/37
+                    metaJdbcConn.TRANSACTION_READ_UNCOMMITTED);
+            }
+        } catch (ClassNotFoundException e) {
+            System.out.println("Error 341: prepare_meta_qa(): "+e);
+        } catch (ExceptionInInitializerError e) {
+            System.out.println("Error 342: prepare_meta_qa(): "+e);
+        } catch (LinkageError e) {
+            System.out.println("Error 344: prepare_meta_qa(): "+e);
+        } catch (SQLException e) {
+            System.out.println("Error 345: prepare_meta_qa(): SQLException ErrCode: "
+                +e.getErrorCode()+": "+e);
+            System.exit(345);
+        } catch (Exception e) {
+            System.out.println("Error 346: prepare_meta_qa(): "+e);
+            System.exit(346);
+        } finally { } //end finally
+    } //end if
+
+    if (targetFileName == null) {
+        try { //# Make the target DB connection.
+            if (   metaJdbcConn != null
+                && targetJdbcDriver  .equals(metaJdbcDriver)
+                && targetJdbcUrl     .equals(metaJdbcUrl)
+                && targetJdbcUserId  .equals(metaJdbcUserId)
+                )
+            {
+                System.out.println(DateUtils.now("HH:mm:ss")+
+                    " Reusing the meta-data connection for target data.");
+                targetJdbcConn = metaJdbcConn;
+            } else {
+                System.out.println(DateUtils.now("HH:mm:ss")+
+                    " Loading target JDBC driver: "+targetJdbcDriver);
+                Class.forName(targetJdbcDriver);                    //# Load the  JDBC Driver.
+                System.out.println(DateUtils.now("HH:mm:ss")+
+                    " Using JDBC url: "+targetJdbcUrl+
+                    "\n\t and Connecting as user: "+
+                    targetJdbcUserId);
+                targetJdbcConn = DriverManager.getConnection(       //# Make the connection to the database.
+                    targetJdbcUrl, targetJdbcUserId,
+                    targetJdbcPassword);
+            }
+            if (targetJdbcDriver.toLowerCase().matches(".*oracle.*")) {
+                targetJdbcConn.setTransactionIsolation(             //# http://www.orafaq.com/node/37
+                    targetJdbcConn.TRANSACTION_READ_COMMITTED);
+    // Set the target DBdate format.  Unfortunately the Oracle JDBC driver seems to ignote this statement. Pity!
+    //            if (dFmtT != null) {
+    //                processSqlStatement(
+    //                    ("alter session set NLS_DATE_FORMAT='"
+    //                    +dFmtT.toPattern()+"'") ,targetJdbcConn );
+    //            }
+            } else {
+                targetJdbcConn.setTransactionIsolation(             //# http://www.orafaq.com/node/37
+                    targetJdbcConn.TRANSACTION_READ_UNCOMMITTED);
+            }
+        } catch (ClassNotFoundException e) {
+            System.out.println("Error 311: prepare_meta_qa(): "+e);
+        } catch (ExceptionInInitializerError e) {
+            System.out.println("Error 312: prepare_meta_qa(): "+e);
+        } catch (LinkageError e) {
+            System.out.println("Error 314: prepare_meta_qa(): "+e);
+        } catch (SQLException e) {
+            System.out.println("Error 315: prepare_meta_qa(): SQLException ErrCode: "
+                +e.getErrorCode()+": "+e);
+            System.exit(315);
+        } catch (Exception e) {
+            System.out.println( "Error 316: prepare_meta_qa(): "+e);
+            e.printStackTrace();
+            System.exit(316);
+        } finally { } //end finally
+    } //end if
+
+    if (!metaFromCache && targetFileName == null) {
+        prefetch_meta_data();                                   //# One query for all the meta-data lookups.
+    } //end if
 
-    if (!(tempTargetTabSqlFile.equals("") || tempTargetTabSqlFile == null)) {
+    if (!(tempTargetTabSqlFile.equals("") || tempTargetTabSqlFile == null)
+        && targetFileName == null) {
         runTargetSqlSetupFile(tempTargetTabSqlFile);            //# Make a temporary target table.
     } //end if
 
@@ -2247,7 +5509,12 @@ public static void prepare_meta_qa() throws IOException {
         targetQuery = inputIsSourceDbaseSql(); // Ie data from a source database Query.
     } else {
         targetQuery = inputIsLocalFlatFile();  // Ie data from a local delimited flat file.
+        if (profileColumns) {
+            profile_columns();
+        } //end if
     } //end if
+    targetQuery = project_target_query(targetQuery);
+    targetTableQuery = targetQuery;
 
     //# Record the generated target Query in the .sql file.
     try {
@@ -2263,7 +5530,16 @@ public static void prepare_meta_qa() throws IOException {
         System.exit(85);
     }
     try { //# Prepare the SQL for the lookup into the target table.
-        targetQueryPreped =  targetJdbcConn.prepareStatement(targetQuery);
+        if (targetFileName == null) {
+            targetQueryPreped =  targetJdbcConn.prepareStatement(targetQuery);
+            resolve_key_types();
+            if (snapshotFileName != null && !inDatabaseDiff) {
+                open_target_snapshot();
+            } //end if
+            if (presenceOnly && sortWindow > 0 && snapshot == null) {
+                prepare_presence_query(targetQuery);
+            } //end if
+        } //end if
     } catch (SQLException e) {
         System.out.println(
             "Warning 86: prepare_meta_qa(): SQLException ErrCode: "
@@ -2273,13 +5549,16 @@ public static void prepare_meta_qa() throws IOException {
         e.printStackTrace();
         System.exit(106);
     } finally { }
-    if (reverseCompare) {
+    if (reverseCompare && targetFileName == null) {
         build_the_reverse_query();
     } //end if
 
     //# Open the output file and write a header.
-    spreadSheet = new PrintWriter(
-                  new FileWriter( targetTable+".xls",false ),true); // Over write.
+    Writer sheet = new FileWriter( targetTable+".xls",false );       // Over write.
+    if (lookupThreads > 0) {
+        sheet = new QueuedWriter(sheet, pipelineDepth);              //# The writer stage.
+    } //end if
+    spreadSheet = new PrintWriter(sheet, true);
     spreadSheet.println(
         "Program: "        +_version.trim()      +" "+
         "Audit of table: " +targetTable.trim()   +" "+
@@ -2293,6 +5572,9 @@ public static void prepare_meta_qa() throws IOException {
         spreadSheet.println(
             "Character data was treated literally. (eg. \"1\" != \"0001\")" );
     } //end if
+    for (String line : profileLines) {                         //# -G.
+        spreadSheet.println( line );
+    } //end for
 
     //# Output the spreadSheet audit trail heading line.
     String msg ="";
@@ -2418,7 +5700,8 @@ public static void build_the_reverse_query() { //function build_the_reverse_quer
  */
 public static String inputIsSourceDbaseSql() {
     try { //# Make the source DB connection.
-        if (   sourceJdbcDriver  .equals(metaJdbcDriver)
+        if (   metaJdbcConn != null
+            && sourceJdbcDriver  .equals(metaJdbcDriver)
             && sourceJdbcUrl     .equals(metaJdbcUrl)
             && sourceJdbcUserId  .equals(metaJdbcUserId)
             )
@@ -2501,8 +5784,6 @@ public static String inputIsSourceDbaseSql() {
                 );
             System.exit(140);
         }
-        sourceCursor = sourceJdbcConn.createStatement().executeQuery(query[i]); // Statement sourceQueryPreped = sourceJdbcConn.createStatement(); //# Prepare source_sql_p from sql_. // sourceCursor = sourceQueryPreped.executeQuery(query[i]);   //# The last one is for the cursor.
-
         //# Get target column names from one of: the last SQL "as" clauses; or from meta-data.
         System.out.println(DateUtils.now("HH:mm:ss")+
             " Deriving the query for the target table based on the input SQL.");
@@ -2512,6 +5793,28 @@ public static String inputIsSourceDbaseSql() {
                 "Resorting to meta-data to build the target table query.");
             targetTableQuery = build_meta_data_based_target_sql();              //# SQL into _scratch.;
         } //end if
+
+        //# Open the source cursor once the key columns are known, for -S.
+        String sourceSql = query[i];
+        if (samplePercent > 0) {
+            sourceSql = sampled_source_query(query[i]);
+        } //end if
+        if (countSourceRows && progressSeconds > 0) {
+            sourceRowTotal = count_source_rows(sourceSql);
+        } //end if
+        sourceQueryText = sourceSql;
+        if (inDatabaseDiff && sourceJdbcConn != targetJdbcConn) {
+            System.out.println("Warning 164: -Q needs the source query on the TARGET connection."+
+                " Continuing with a lookup per row.");
+            inDatabaseDiff = false;
+        } //end if
+        if (profileColumns) {
+            profile_columns();                          //# Before the source cursor is open.
+        } //end if
+        if (!samplePushedDown && !inDatabaseDiff) {       //# -Q runs the query in its join.
+            _roundTrips++;
+            sourceCursor = sourceJdbcConn.createStatement().executeQuery(sourceSql); // Statement sourceQueryPreped = sourceJdbcConn.createStatement(); //# Prepare source_sql_p from sql_. // sourceCursor = sourceQueryPreped.executeQuery(query[i]);   //# The last one is for the cursor.
+        } //end if
     } catch (FileNotFoundException e) {
         System.out.println("Error 1: FileNotFoundException: "+e
             + "\nThe file: " + inputFileName + " can't be found."
@@ -2535,41 +5838,221 @@ public static String inputIsSourceDbaseSql() {
 
 /**
 ##########################################################
-# Purpose: Set up the meta_data queries.
+# Purpose: Fetch all the META_DWH_TABLE_FIELD rows of the
+#          target table with one query, into metaRows and
+#          metaByField. Every other meta-data lookup is
+#          answered from these, instead of a query each.
 ##########################################################
 **/
-public static void set_up_meta_data_queries() {
-    String metaQuery =null;
-    try { //whenever error do_nothing;
-        generatedSqlFile.println(  "-- This is the meta data query used to genrate the Target DB SQL." );
-        //# Prepare meta-data queries.
-        metaQuery =
-            " select "+
-            " field_name,"+
-            " lower(source_field_type),"+
-            " lower(source_field_name),"+
-            " lower(source_table_name),"+
-            " primary_unique_key_ind   "+
-            " from meta_dwh_table_field "+
-            " where upper(table_name) = '"+targetTable.toUpperCase()+"')"+
-            "   and ( upper(source_system_name) = '"+ sourceSystem.toUpperCase()+"'"+
-            "      or upper(primary_unique_key_ind) = 'Y' )"+
-            "   and design_status != 'Deferred'            "+
-            "   and design_status not like '%Remove%'      "+
-            "   and design_status not like 'Don%t Use%'    "+
-            " order by design_sequence;                    ";
-        generatedSqlFile.println(  metaQuery );
-        PreparedStatement meta_column_q = metaJdbcConn.prepareStatement(metaQuery);
-        metaColCursor = meta_column_q.executeQuery(metaQuery);
-        generatedSqlFile.println( "" );
-    } catch (SQLException e) {  //whenever error stop
-        System.out.println("Warning 130: SQLException ErrCode: "
+public static void prefetch_meta_data() { //function prefetch_meta_data()
+    String metaQuery =
+        " select field_name,"+
+        "        source_field_type,"+
+        "        source_field_name,"+
+        "        source_table_name,"+
+        "        primary_unique_key_ind,"+
+        "        source_system_name,"+
+        "        design_status"+
+        "   from meta_dwh_table_field"+
+        "  where upper(table_name) = ?"+
+        "  order by design_sequence";
+    PreparedStatement metaPrep = null;
+    metaRows.clear();
+    metaByField.clear();
+    if (metaJdbcConn == null) {
+        System.out.println("Warning 141: prefetch_meta_data(): No meta-data connection."
+            +" Continuing without meta data.");
+        return;
+    } //end if
+    try { //# Do not crash in the case where the table is not in this database.
+        metaPrep = metaJdbcConn.prepareStatement(metaQuery);
+        metaPrep.setString(1, targetTable.trim().toUpperCase());
+        ResultSet metaCursor = metaPrep.executeQuery();
+        while (metaCursor.next()) {
+            String[] row = new String[_mWidth];
+            for (int i=0; i<_mWidth; i++) {
+                row[i] = metaCursor.getString(i+1);
+            } //end for
+            add_meta_row(row);
+        } //end while
+        metaCursor.close();
+        System.out.println(DateUtils.now("HH:mm:ss")+
+            " Fetched "+metaRows.size()+" meta-data rows for table: "+targetTable);
+        if (metaCacheMinutes > 0) {
+            write_meta_data_cache();
+        } //end if
+    } catch (SQLException e) {
+        System.out.println("Warning 142: prefetch_meta_data(): SQLException ErrCode: "
             +e.getErrorCode()+": "+e+": "+metaQuery);
     } catch (Exception e) {
-        System.out.println( "Warning 89: "+e+": "+metaQuery);
-        // e.printStackTrace();
-    } finally { }
-} //end function { set_up_meta_data_queries() }
+        System.out.println( "Warning 143: prefetch_meta_data(): "+e);
+    } finally {
+        try {
+            if (metaPrep != null) {
+                metaPrep.close();
+            } //end if
+        } catch (SQLException e) {
+            // Do nothing.
+        }
+    } //end finally
+} //end function { prefetch_meta_data() }
+
+
+/**
+##########################################################
+# Purpose: Record one meta-data row in metaRows and metaByField.
+#          The first row of a field name wins the lookup.
+##########################################################
+ *
+ * @param row The META_DWH_TABLE_FIELD columns in _m* order.
+ */
+public static void add_meta_row(String[] row) { //function add_meta_row(row)
+    metaRows.add(row);
+    if (row[_mField] != null) {
+        String field_ = row[_mField].trim().toLowerCase();
+        if (!metaByField.containsKey(field_)) {
+            metaByField.put(field_, row);
+        } //end if
+    } //end if
+} //end function { add_meta_row() }
+
+
+/**
+##########################################################
+# Purpose: Look up the meta-data row of a target column.
+# Returns: The row, or null if the column has no meta data.
+##########################################################
+ *
+ * @param column_ The case is ignored.
+ * @return
+ */
+public static String[] meta_row(String column_) { //function meta_row(column_)
+    if (column_ == null) {
+        return null;
+    } //end if
+    return metaByField.get(column_.trim().toLowerCase());
+} //end function { meta_row() }
+
+
+/**
+##########################################################
+# Purpose: In-memory versions of the meta-data where clauses:
+#            design_status != 'Deferred'
+#            and design_status not like '%Remove%'
+#            and design_status not like 'Don%t Use%'
+#          and lower(source_system_name) like lower('%sys%').
+#          As in SQL, a null status or system never matches.
+##########################################################
+ *
+ * @param row
+ * @return
+ */
+public static boolean meta_status_ok(String[] row) { //function meta_status_ok(row)
+    String status_ = row[_mStatus];
+    return (status_ != null
+        && !status_.equals("Deferred")
+        && status_.indexOf("Remove") == _not_found
+        && !status_.matches("^Don.*t Use.*"));
+} //end function { meta_status_ok() }
+
+public static boolean meta_system_like(String[] row) { //function meta_system_like(row)
+    return (row[_mSystem] != null
+        && row[_mSystem].toLowerCase().indexOf(sourceSystem.trim().toLowerCase()) != _not_found);
+} //end function { meta_system_like() }
+
+public static String meta_lower(String x) { //function meta_lower(x)
+    return (x == null ? null : x.toLowerCase());
+} //end function { meta_lower() }
+
+
+/**
+##########################################################
+# Purpose: Name of the local meta-data cache file and the
+#          first line that identifies what it holds.
+##########################################################
+**/
+public static String meta_cache_file_name() { //function meta_cache_file_name()
+    return targetTable.trim()+".meta_qa.cache";
+} //end function { meta_cache_file_name() }
+
+public static String meta_cache_heading() { //function meta_cache_heading()
+    return "-- metaqa meta-data cache of table: "+targetTable.trim().toUpperCase()
+        +" from: "+metaJdbcUrl;
+} //end function { meta_cache_heading() }
+
+
+/**
+##########################################################
+# Purpose: Save metaRows in the local cache file, one tab
+#          delimited row per line, with \N for a null.
+##########################################################
+**/
+public static void write_meta_data_cache() { //function write_meta_data_cache()
+    try {
+        PrintWriter cacheFile = new PrintWriter(
+            new BufferedWriter(new FileWriter(meta_cache_file_name(),false))); // Over write.
+        cacheFile.println(meta_cache_heading());
+        for (String[] row : metaRows) {
+            StringBuilder line = new StringBuilder();
+            for (int i=0; i<_mWidth; i++) {
+                line.append(i == 0 ? "" : "\t");
+                line.append(row[i] == null ? "\\N" : row[i].replace('\t',' ').replace('\n',' '));
+            } //end for
+            cacheFile.println(line);
+        } //end for
+        cacheFile.close();
+    } catch (IOException e) {
+        System.out.println("Warning 144: write_meta_data_cache(): "+e+": "+meta_cache_file_name());
+    }
+} //end function { write_meta_data_cache() }
+
+
+/**
+##########################################################
+# Purpose: Load metaRows from the local cache file, if it is
+#          younger than the -M minutes and was made for this
+#          table and meta-data url.
+# Returns: True if the cache was used.
+##########################################################
+**/
+public static boolean read_meta_data_cache() { //function read_meta_data_cache()
+    File cache = new File(meta_cache_file_name());
+    if (!cache.exists()
+        || System.currentTimeMillis() - cache.lastModified() > metaCacheMinutes * 60000L) {
+        return false;
+    } //end if
+    metaRows.clear();
+    metaByField.clear();
+    try {
+        BufferedReader cacheFile = new BufferedReader(new FileReader(cache));
+        String line = cacheFile.readLine();
+        if (line == null || !line.equals(meta_cache_heading())) {
+            cacheFile.close();
+            return false;
+        } //end if
+        while ((line = cacheFile.readLine()) != null) {
+            String[] row = line.split("\t",-2);
+            if (row.length != _mWidth) {
+                continue; // while              //# Ignore damaged lines.
+            } //end if
+            for (int i=0; i<_mWidth; i++) {
+                if (row[i].equals("\\N")) {
+                    row[i] = null;
+                } //end if
+            } //end for
+            add_meta_row(row);
+        } //end while
+        cacheFile.close();
+    } catch (IOException e) {
+        System.out.println("Warning 145: read_meta_data_cache(): "+e+": "+meta_cache_file_name());
+        metaRows.clear();
+        metaByField.clear();
+        return false;
+    }
+    System.out.println(DateUtils.now("HH:mm:ss")+
+        " Using "+metaRows.size()+" meta-data rows cached in: "+meta_cache_file_name());
+    return true;
+} //end function { read_meta_data_cache() }
 
 
 /**
@@ -2581,24 +6064,29 @@ public static void set_up_meta_data_queries() {
  */
 public static String build_meta_data_based_target_sql() { //function build_meta_data_based_target_sql()
     String targetQuery = null;
-    set_up_meta_data_queries();
     try {
         //# Develop the targetQuery for the DWH meta data.
-        generatedSqlFile.println( "-- This is the SQL created from the meta data." );
         targetQuery = "select";
-        //foreach metaColCursor into {
-        while(metaColCursor.next()) {
-            targetColumn  = metaColCursor.getString(1);
-            sourceColType = metaColCursor.getString(2);
-            sourceColName = metaColCursor.getString(3);
-            sourceTabName = metaColCursor.getString(4);
-            keyIndYN      = metaColCursor.getString(5);
+        size_columns( metaRows.size() );       //# At most one column per meta-data row.
+        for (String[] row : metaRows) {
+            //# ie. (upper(source_system_name) = <sys> or upper(primary_unique_key_ind) = 'Y')
+            if (!(sourceSystem.trim().equalsIgnoreCase(row[_mSystem])
+                || "Y".equalsIgnoreCase(row[_mKeyInd]))
+                || !meta_status_ok(row)) {
+                continue; // for
+            } //end if
+            targetColumn  = row[_mField];
+            sourceColType = meta_lower(row[_mType]);
+            sourceColName = meta_lower(row[_mSrcCol]);
+            sourceTabName = meta_lower(row[_mSrcTab]);
+            keyIndYN      = row[_mKeyInd];
             tgt_col_count++;
             array_boundary( tgt_col_count  );
 
             //# Add the columns to the select clause.
-            targetTableQuery= " "+targetColumn+ ","+c[tgt_col_count]+targetColumn;
-            if (keyIndYN.equals("Y")) {
+            targetQuery += " "+targetColumn+ ",";
+            c[tgt_col_count] = targetColumn;
+            if ("Y".equals(keyIndYN)) {
                 isKeyColumn[tgt_col_count] = true;
                 _key_element = _key_element+1;
                 key_pos[_key_element] = tgt_col_count;
@@ -2611,7 +6099,7 @@ public static String build_meta_data_based_target_sql() { //function build_meta_
             _srcMetaTab[tgt_col_count] = sourceTabName;
             _srcMetaType[tgt_col_count] = sourceColType;
             _comparisonType[tgt_col_count] = data_type( sourceColType        );
-        } //end foreach
+        } //end for
         if (tgt_col_count == 0) {  sql_error_handle( "_col_count",15); } //end if;
             _key_count = _key_element;
             targetQuery = targetQuery.replaceAll(",$","")+ //# Remove trailing comma.
@@ -2622,10 +6110,6 @@ public static String build_meta_data_based_target_sql() { //function build_meta_
             targetQuery += " "+ c[key_pos[i]]+ " = ? and";
         } //end for
          targetQuery = targetQuery.replaceAll("and$",";"); //# Remove trailing "and".;
-    } catch (SQLException e) {
-        System.out.println( "Error 68: SQLException ErrCode: "
-            +e.getErrorCode()+": "+e);
-        System.exit(68);
     } catch (Exception e) {
         System.out.println( "Error 90: "+e);
         System.exit(90);
@@ -2636,17 +6120,107 @@ public static String build_meta_data_based_target_sql() { //function build_meta_
 
 /**
 ##########################################################
-# Purpose: Trap array boundary violations.
+# Purpose: The -A option. Keep the key columns and the columns
+#          -A names in the target query, and mark the rest
+#          skipped, so they are neither fetched, parsed nor
+#          compared. Without -A every column is kept.
+#          tgtCol[j] is the column of the j-th selected one.
+##########################################################
+ *
+ * @param query_ The target query of all the columns.
+ * @return
+ */
+public static String project_target_query(String query_) { //function project_target_query(query_)
+    int n = 0, keys_ = 0;
+    for (int i=1; i<=tgt_col_count; i++) {
+        if (isKeyColumn[i]) {
+            keys_++;
+        } //end if
+        columnSkipped[i] = (!isKeyColumn[i] && (presenceOnly
+            || c[i] != null && profileMatched.contains(c[i].trim().toLowerCase())
+            || auditColumnPattern != null
+            && !(c[i] != null && auditColumnPattern.matcher(c[i].trim()).matches())));
+        if (!columnSkipped[i]) {
+            tgtCol[++n] = i;
+        } //end if
+    } //end for
+    tgtSelectCount = n;
+    if (n == tgt_col_count) {
+        return query_;
+    } //end if
+    if (presenceOnly) {
+        System.out.println(DateUtils.now("HH:mm:ss")+
+            " Checking only the presence of the keys.");
+    } else if (n == keys_ && auditColumnPattern != null) {
+        System.out.println("Warning 159: No column matches -A "+auditColumns+
+            ". Only the keys will be looked up.");
+    } //end if
+    String select = "select";
+    for (int j=1; j<=n; j++) {
+        select += " "+c[tgtCol[j]]+",";
+    } //end for
+    if (!presenceOnly) {
+        System.out.println(DateUtils.now("HH:mm:ss")+
+            " Auditing "+(n - keys_)+" of "+(tgt_col_count - keys_)+" columns"+
+            (auditColumnPattern != null ? " named by -A." : "."));
+    } //end if
+    return select.replaceAll(",$","")+
+        query_.substring(query_.toLowerCase().indexOf(" from "));
+} //end function { project_target_query() }
+
+
+/**
+##########################################################
+# Purpose: Make the column arrays hold columns 1 to <n>.
+#          Called with the column count of the table once it
+#          is known, so the arrays fit the table exactly.
+##########################################################
+ *
+ * @param n
+ */
+public static void size_columns( int n ) { //function size_columns( n )
+    int len = n + 2;                     //# Index 0 is unused, and one spare for HEADER| offsets.
+    if (len <= siz) {
+        return;
+    } //end if
+    _comparisonType = Arrays.copyOf(_comparisonType, len);
+    dFmtS           = Arrays.copyOf(dFmtS, len);
+    _srcMetaType    = Arrays.copyOf(_srcMetaType, len);
+    _srcMetaCol     = Arrays.copyOf(_srcMetaCol, len);
+    _srcMetaTab     = Arrays.copyOf(_srcMetaTab, len);
+    c               = Arrays.copyOf(c, Math.max(c.length, len)); //# May already be the HEADER| split.
+    t               = Arrays.copyOf(t, len);
+    s               = Arrays.copyOf(s, len);
+    isKeyColumn     = Arrays.copyOf(isKeyColumn, len);
+    p               = Arrays.copyOf(p, len);
+    key_pos         = Arrays.copyOf(key_pos, len);
+    auditCol        = Arrays.copyOf(auditCol, len);
+    auditDiff       = Arrays.copyOf(auditDiff, len);
+    dateTextT       = Arrays.copyOf(dateTextT, len);
+    dateMillisT     = Arrays.copyOf(dateMillisT, len);
+    dateTextS       = Arrays.copyOf(dateTextS, len);
+    dateMillisS     = Arrays.copyOf(dateMillisS, len);
+    columnDiffRows  = Arrays.copyOf(columnDiffRows, len);
+    columnSummary   = Arrays.copyOf(columnSummary, len);
+    columnSkipped   = Arrays.copyOf(columnSkipped, len);
+    tgtCol          = Arrays.copyOf(tgtCol, len);
+    keyJdbcType     = Arrays.copyOf(keyJdbcType, len);
+    field           = Arrays.copyOf(field, Math.max(field.length, len));
+    siz = len;
+} //end function {  size_columns( n )  }
+
+
+/**
+##########################################################
+# Purpose: Grow the column arrays to hold column <n>, when the
+#          column count is found one column at a time.
 ##########################################################
  *
  * @param n
  */
 public static void array_boundary( int n ) { //function array_boundary( n )
-    if (n > siz) {
-        System.out.println(
-            "Error 2: Recompile this program with array size of at least: "+n+
-            " to hold all the columns in this table. Change the global siz variable.");
-        System.exit(2);
+    if (n + 2 > siz) {
+        size_columns( Math.max(n, siz * 2) );  //# Doubling, as the count is not yet known.
     } //end if
 } //end function {  array_boundary( n )  }
 
@@ -2691,7 +6265,9 @@ public static char data_type( String type_ ) { //function data_type( compType_ )
 public static String inputIsLocalFlatFile() { //function inputIsLocalFlatFile()
     try {
         //# Open the input and do the priming read for the HEADER| record.
-        flat_input_file = new BufferedReader(new FileReader(inputFileName));
+        sourceFileStream = new FileInputStream(inputFileName);
+        sourceFileBytes = new File(inputFileName).length();
+        flat_input_file = new BufferedReader(new InputStreamReader(sourceFileStream));
         String flatLine = flat_input_file.readLine();
         c = flatLine.split("[|]",-2);
         src_field_count=c.length;
@@ -2813,54 +6389,29 @@ public static void check_if_columns_exist() { //function check_if_columns_exist(
  */
 public static String build_header_based_target_sql() { //function build_header_based_target_sql()
     String sqlFromHeader = null;
-    ResultSet whatMeta_c = null;
+    String[] meta = null;
     int i = 0;
-    //# Set up the meta_data lookup for writing to the spreadsheet when variances are detected.
-    try { //# Do not crash in the case where the table is not in this database.;
-        PreparedStatement whatMeta_p = metaJdbcConn.prepareStatement(
-            "select source_field_type,"+
-                  " source_field_name,"+
-                  " source_table_name"+
-            " from meta_dwh_table_field"+
-            " where lower(table_name) = lower('"+targetTable+"')"+
-             " and lower(field_name) = lower( ? ) " // The lower() function will slow this query down.
-            );
+    //# Look up the meta_data for writing to the spreadsheet when variances are detected.
+    try {
         tgt_col_count = src_field_count -1;        //# Remove one for the HEADER| record type.;
+        size_columns( src_field_count );
         sqlFromHeader= "select" ;
-        forCheckLoop : for (i=1; i<=tgt_col_count; i++) {
+        for (i=1; i<=tgt_col_count; i++) {
             array_boundary( i );
             if ( c[i]==null || c[i].equals("") || c[i].equals("''") ) {
                 c[i] = "''";                 //# Handle null column names.
-            } else {
+            } else if (targetFileName == null) {  //# No TARGET table with -F.
                 column_exists( c[i],i );
             } //end if
             sqlFromHeader +=" "+c[i]+",";    //# Add the columns to the select clause.
             _comparisonType[i] = _character; //# Default to character data type.
-            whatMeta_p.setString(1,c[i]);
-            try {
-                whatMeta_c = whatMeta_p.executeQuery(); // The lower() function will slow this query down.
-            } catch (SQLException e) {
-                System.out.println("Warning 116: SQLException ErrCode: "
-                    +e.getErrorCode()+": "+e);
-                continue forCheckLoop;
-            }
-            try {
-                whatMeta_c.next();
-            } catch (SQLException e) {
-                System.out.println("Warning 117: SQLException ErrCode: "
-                    +e.getErrorCode()+": "+e);
-                continue forCheckLoop;
-            }
-            if (whatMeta_c.isFirst()) {
-                _srcMetaType[i]=whatMeta_c.getString(1);
-                _srcMetaCol[i]=whatMeta_c.getString(2);
-                _srcMetaTab[i]=whatMeta_c.getString(3);
+            meta = meta_row(c[i]);           //# From prefetch_meta_data().
+            if (meta != null) {
+                _srcMetaType[i]=meta[_mType];
+                _srcMetaCol[i]=meta[_mSrcCol];
+                _srcMetaTab[i]=meta[_mSrcTab];
             }
-        } //end forCheckLoop
-    } catch (SQLException e) {
-        System.out.println("Warning 46: build_header_based_target_sql(): "
-            +"SQLException ErrCode: "+e.getErrorCode()+": "+e);
-        //System.exit(46);
+        } //end for
     } catch (Exception e) {
         System.out.println( "Warning 47: build_header_based_target_sql(): "+e);
         //System.exit(47);
@@ -2875,7 +6426,7 @@ public static String build_header_based_target_sql() { //function build_header_b
 ##########################################################
 # Purpose: Test if the column from the header is actually in the
 #          table in the target database without actually
-#          getting data from the table.
+#          getting data from the table. See target_column_set().
 # Data eg: HEADER|COL_ONE|COL_TWO|COL_THREE|...|COL_N|
 ##########################################################
  *
@@ -2883,22 +6434,63 @@ public static String build_header_based_target_sql() { //function build_header_b
  * @param i
  */
 public static void column_exists(String col_,int i) { //function column_exists(col_,i)
-    String txt = "select "+ col_+" from "+ targetTable;
-    try { //whenever error do_nothing;
-        metaColExistsPrep = targetJdbcConn.prepareStatement(txt);
-    } catch (SQLException e) { //ie not found.
+    String name_ = col_.trim().replaceAll("^[\"']|[\"']$","").toLowerCase();
+    if (!target_column_set().contains(name_)) { //ie not found.
         System.out.println(
             "Warning 339: Column number: "+i+" - "+col_+",\n\t"+
             "does not exist in the physical target table: \""+ targetTable+"\"\n\t"+
             "and will be treated as if a ('') null empty column had been\n\t"+
-            "selected to create the input-file: SQLException \n\t"
-            +"ErrCode: "+e.getErrorCode()+": "+e);
+            "selected to create the input-file.");
         c[i] = "''";                     //# Now set the column to empty string.
+    } //end if
+} //end function {  column_exists()  }
+
+
+/**
+##########################################################
+# Purpose: Get the column names of the target table, once
+#          per table, from the meta data of a query that
+#          returns no rows: select * from <table> where 1=0
+# Returns: The lower case column names, or an empty set
+#          if the table could not be queried.
+##########################################################
+ *
+ * @return
+ */
+public static HashSet<String> target_column_set() { //function target_column_set()
+    if (targetColumnSet != null && targetTable.equals(targetColumnSetOf)) {
+        return targetColumnSet;
+    } //end if
+    targetColumnSet = new HashSet<String>();
+    targetColumnSetOf = targetTable;
+    String txt = "select * from "+ targetTable+ " where 1=0";
+    Statement colsStmt = null;
+    try {
+        colsStmt = targetJdbcConn.createStatement();
+        ResultSet colsCursor = colsStmt.executeQuery(txt);
+        ResultSetMetaData colsMeta = colsCursor.getMetaData();
+        for (int i=1; i<=colsMeta.getColumnCount(); i++) {
+            targetColumnSet.add(colsMeta.getColumnName(i).trim().toLowerCase());
+        } //end for
+        colsCursor.close();
+    } catch (SQLException e) { //ie. The table is not there.
+        System.out.println(
+            "Warning 146: target_column_set(): SQLException ErrCode: "
+            +e.getErrorCode()+": "+e+": "+txt);
     } catch (Exception e) {
-        System.out.println( "Error 92: column_exists(): "+e);
+        System.out.println( "Error 92: target_column_set(): "+e);
         System.exit(92);
-    } finally { } //whenever error stop
-} //end function {  column_exists()  }
+    } finally {
+        try {
+            if (colsStmt != null) {
+                colsStmt.close();
+            } //end if
+        } catch (SQLException e) {
+            // Do nothing.
+        }
+    } //end finally
+    return targetColumnSet;
+} //end function { target_column_set() }
 
 
 /**
@@ -2910,82 +6502,62 @@ public static void column_exists(String col_,int i) { //function column_exists(c
  * @return
  */
 public static String build_the_where_clause() { //function build_the_where_clause()
-    String scratch_ = "where ",
-           scratch2_ = null; //# Generic string working with text.
-    try {
-        //# Build the where clause from either meta-data or from command line data.
-        if (inputKeyCols == null) {
-            //# Use the meta-data to work out the primary key.
-            scratch2_ =
-                " select field_name, "+
-                "        lower(source_field_type), "+
-                "        lower(source_field_name), "+
-                "        lower(source_table_name) "+
-                "  from meta_dwh_table_field "+
-                "  where lower(table_name) = lower('"+
-                              targetTable+ "') "+
-                "    and lower(source_system_name) like lower('%"+
-                              sourceSystem+ "%') "+
-                "    and upper(primary_unique_key_ind) = 'Y' "+
-                "    and design_status not like '%Removed%' "+
-                "    and design_status != 'Deferred' "+
-                "    and design_status not like 'Don%t Use%' "+
-                "  order by design_sequence";
-            PreparedStatement primary_key_p = metaJdbcConn.prepareStatement(scratch2_);
-            ResultSet primary_key_c = primary_key_p.executeQuery("What ever the SQL_ is");
-
-            //# Initialze the the meta-data key indicator to false.
-            for (int i=1; i<=tgt_col_count; i++) {
-                isKeyColumn[i] = false;
-            } //end for
+    String scratch_ = "where ";
+    //# Build the where clause from either meta-data or from command line data.
+    if (inputKeyCols == null) {
+        //# Use the meta-data to work out the primary key.
 
-            //# Get the meta-data keys.
-            while (primary_key_c.next()) {      //foreach primary_key_c into
-                targetColumn  = primary_key_c.getString(1);
-                sourceColType = primary_key_c.getString(2);
-                sourceColName = primary_key_c.getString(3);
-                sourceTabName = primary_key_c.getString(4);
-
-                _key_count++;
-                //# Find the matching column and set the key indicator and data type.
-                for (int i=1; i<=tgt_col_count; i++) {
-                    if (c[i].equals(targetColumn) ) {
-                        isKeyColumn[i] = true;
-                        _srcMetaType[i] = sourceColType;
-                        _srcMetaCol[i] = sourceColName;
-                        _srcMetaTab[i] = sourceTabName;
-                        scratch_ += make_where_element( i,_key_count );
-                        break; // for each
-                    } //end if
-                } //end for
-            } //end foreach
-            if (_key_count == 0) {
-                System.out.println("Error 14: Key columns missing from table META_DWH_TABLE_FIELD.");
-                System.out.println("Make sure the meta data PRIMARY_UNIQUE_KEY_IND is 'Y' for");
-                System.out.println("the Pkey, or provide the Pkey column-nos on the command line");
-                System.out.println(" See SQL: "+ scratch2_);
-                System.exit(14); //exit program 14
+        //# Initialze the the meta-data key indicator to false.
+        for (int i=1; i<=tgt_col_count; i++) {
+            isKeyColumn[i] = false;
+        } //end for
+
+        //# Get the meta-data keys, in design_sequence order.
+        for (String[] row : metaRows) {
+            if (!("Y".equalsIgnoreCase(row[_mKeyInd])
+                && meta_system_like(row)
+                && meta_status_ok(row))) {
+                continue; // for
             } //end if
+            targetColumn  = row[_mField];
+            sourceColType = meta_lower(row[_mType]);
+            sourceColName = meta_lower(row[_mSrcCol]);
+            sourceTabName = meta_lower(row[_mSrcTab]);
+
+            _key_count++;
+            //# Find the matching column and set the key indicator and data type.
+            for (int i=1; i<=tgt_col_count; i++) {
+                if (c[i].equals(targetColumn) ) {
+                    isKeyColumn[i] = true;
+                    _srcMetaType[i] = sourceColType;
+                    _srcMetaCol[i] = sourceColName;
+                    _srcMetaTab[i] = sourceTabName;
+                    scratch_ += make_where_element( i,_key_count );
+                    break; // for each
+                } //end if
+            } //end for
+        } //end for
+        if (_key_count == 0) {
+            System.out.println("Error 14: Key columns missing from table META_DWH_TABLE_FIELD.");
+            System.out.println("Make sure the meta data PRIMARY_UNIQUE_KEY_IND is 'Y' for");
+            System.out.println("the Pkey, or provide the Pkey column-nos on the command line");
+            System.out.println(" See table_name: "+ targetTable+ " and source_system_name: "+ sourceSystem);
+            System.exit(14); //exit program 14
+        } //end if
+    } else {
+        //# Use the key elements specified on the command line. #MB#
+        if (inputKeyCols.length() == 1) {
+            scratch_ +=
+                make_where_element( Integer.parseInt(inputKeyCols),1 );
+            _key_count = 1;
         } else {
-            //# Use the key elements specified on the command line. #MB#
-            if (inputKeyCols.length() == 1) {
-                scratch_ +=
-                    make_where_element( Integer.parseInt(inputKeyCols),1 );
-                _key_count = 1;
-            } else {
-                split_up_command_line_keys();
-                for (int i=1; i<=_key_count; i++) {
-                    scratch_ += make_where_element( key_pos[i],i );
-                } //end for
-            } //end if
+            split_up_command_line_keys();
+            for (int i=1; i<=_key_count; i++) {
+                scratch_ += make_where_element( key_pos[i],i );
+            } //end for
         } //end if
-        return scratch_.substring(0,(scratch_.length()-3)); //# Remove last "and".
-    } catch (SQLException e) {
-        System.out.println( "Error 70: build_the_where_clause(): "
-            +"SQLException ErrCode: "+e.getErrorCode()+": "+e);
-        //e.printStackTrace();
-    } finally { }
-    return null;
+    } //end if
+    return scratch_.substring(0,(scratch_.length()-3)); //# Remove last "and".
 } //end function { build_the_where_clause() }
 
 
@@ -3002,9 +6574,10 @@ public static void split_up_command_line_keys() { //function split_up_command_li
     key_pos_str =inputKeyCols.split(",",-2);
     int i = 0;
     _key_count = key_pos_str.length;
-    if (_key_count < 1 || _key_count > maxKeys) {  //Limits trap.
+    if (_key_count < 1) {  //Limits trap.
         sql_error_handle( "_key_count",9 );
     } //end if
+    size_columns( _key_count );
     try {
         for ( i=0; i<_key_count; i++) {
             if (key_pos_str[i].equals("") || key_pos_str[i] == null) {
@@ -3358,28 +6931,38 @@ public static void do_load_sql( String sql_, Connection conn) {
     String loadLine = null,
            loadSql = null,
            loadCols[] = null;
-    int nCols = 0;
+    int nCols = 0,
+        n = 0,                                                  //# Columns in the current line.
+        i = 0;                                                  //# Line number.
+    boolean autoCommit = true,                                  //# To restore the connection as it was.
+            commits = false,                                    //# Commit every batch.
+            batches = false;                                    //# The driver can batch.
     try { //##MB##
+        autoCommit = conn.getAutoCommit();
+        batches = conn.getMetaData().supportsBatchUpdates();
+        commits = conn.getMetaData().supportsTransactions();    //# Eg. Not for an unlogged Informix DB.
+        if (commits) {
+            conn.setAutoCommit(false);
+        } //end if
         loadFile = new BufferedReader(
                     new InputStreamReader(
-                    new FileInputStream(fName)));               //#open_ascii( fName ) returning _end_of_file;
+                    new FileInputStream(fName)), 65536);        //#open_ascii( fName ) returning _end_of_file;
         loadLine = loadFile.readLine();                         //# Read a line from the file.
-        if (loadLine.startsWith("HEADER|")) {
+        if (loadLine != null && loadLine.startsWith("HEADER|")) {
             loadLine = loadFile.readLine();                     //# Ignore the Header record if there is one.
         }
         if (loadLine != null) {
-            loadCols = loadLine.split("[|]");                   //# Split record into array.
-            nCols = loadCols.length;
+            nCols = split_delimited_line(loadLine, '|', null);  //# Count the columns.
+            loadCols = new String[nCols];                       //# Reused for every line.
             loadSql = "insert into "+tName+" values ("+         //# Compose SQL.
                 replicate("?,",nCols).replaceAll(",$",")");     //# Strip last comma.
             insertQueryPreped =
                 conn.prepareStatement(loadSql);                 //# Prepare SQL.
         }
-        int i = 0;
         while (loadLine != null) {                              //# Loop thru the load file.
             i++;
-            loadCols = loadLine.split("[|]");                   //# Split record into array.
-            if (nCols != loadCols.length) {                     //# Trap column variations.
+            n = split_delimited_line(loadLine, '|', loadCols);  //# Split record into array.
+            if (nCols != n) {                                   //# Trap column variations.
                 System.out.println("Error 132: do_load_sql(): "+
                     "The load file '"+fName+
                     "' column counts differ,"+
@@ -3390,15 +6973,38 @@ public static void do_load_sql( String sql_, Connection conn) {
             for (int j=0;j<nCols;j++) {                         //# Move array to columns.
                 insertQueryPreped.setString((j+1), loadCols[j]);//# insertQueryPreped.setArray(0, loadCols); <-# Does not work.
             }
-            insertQueryPreped.executeUpdate();                  //# Insert the row.
+            if (batches) {
+                insertQueryPreped.addBatch();                   //# Oracle binds the batch as arrays.
+                if (i % loadBatchSize == 0) {
+                    insertQueryPreped.executeBatch();           //# Insert the batch of rows.
+                    if (commits) {
+                        conn.commit();
+                    } //end if
+                } //end if
+            } else {
+                insertQueryPreped.executeUpdate();              //# Insert the row.
+            } //end if
             loadLine = loadFile.readLine();                     //# Read another load-record.
         } //while loop
-        insertQueryPreped.close();                              //# Clean up.
+        if (insertQueryPreped != null) {
+            if (batches && i % loadBatchSize != 0) {
+                insertQueryPreped.executeBatch();               //# The last part batch.
+            } //end if
+            if (commits) {
+                conn.commit();
+            } //end if
+            insertQueryPreped.close();                          //# Clean up.
+        } //end if
         System.out.println( DateUtils.now("HH:mm:ss")+
-            " Loaded "+i+" rows from file "+fName+" into table "+tName);
+            " Loaded "+i+" rows from file "+fName+" into table "+tName+
+            (batches ? " in batches of "+loadBatchSize : ""));
     } catch (IOException e) {
         System.out.println( "Warning 133: do_load_sql(): "+e+": "+fName);
         //e.printStackTrace();
+    } catch (SQLException e) {
+        System.out.println( "Warning 147: do_load_sql(): SQLException ErrCode: "
+            +e.getErrorCode()+": "+e+": \n\t"+sql_+
+            ": \n\tIn the batch up to line: "+i+": "+loadLine);
     } catch (Exception e) {
         System.out.println( "Warning 98: do_load_sql(): "+
             e+": \n\t"+sql_+": \n\t"+loadLine);
@@ -3406,6 +7012,16 @@ public static void do_load_sql( String sql_, Connection conn) {
     } catch (Error e) { //if (sql_err())
          sql_error_handle( sql_,39 );
     } finally {
+        try {
+            if (commits) {
+                conn.setAutoCommit(autoCommit);                 //# Commits anything still pending.
+            } //end if
+            if (loadFile != null) {
+                loadFile.close();
+            } //end if
+        } catch (Exception e) {
+            System.out.println( "Warning 148: do_load_sql(): "+e);
+        }
         insertQueryPreped = null;                               //# Realease Prepared SQL.
         loadFile = null;                                        //# Realease load datafile.
     }
@@ -3452,25 +7068,21 @@ public static void do_unload_sql( String sql_, Connection conn) {
         System.exit(135);
     }
     try {
-        PrintWriter unloadFile =  new PrintWriter(
-            new FileWriter( fName,false ),true); // Over write.
-        PreparedStatement unloadPrep = conn.prepareStatement(sqlText);
-        ResultSet unloadCursor = unloadPrep.executeQuery();
-        int cols = unloadCursor.getMetaData().getColumnCount(),
-            rows=0;
-        String unloadLine = "";
-        //# Insert records from the table into the file.
-        while (unloadCursor.next()) {
-            for (int i=1;i<=cols;i++) {
-                unloadLine += unloadCursor.getString(i)+"|";
-            }
-            unloadFile.println(unloadLine);
-            unloadLine="";
-            rows++;
-        }
-        unloadFile.close();
-        unloadPrep.close();
-        unloadCursor.close();
+        long rows = 0;
+        if (unloadThreads > 1) {
+            rows = do_parallel_unload(sqlText, conn, fName);
+        } //end if
+        if (rows < 0 || unloadThreads <= 1) {   //# Not parallel, or could not split the query.
+            Writer unloadFile = open_unload_file(fName);
+            PreparedStatement unloadPrep = conn.prepareStatement(sqlText,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            unloadPrep.setFetchSize(unloadFetchSize);
+            ResultSet unloadCursor = unloadPrep.executeQuery();
+            rows = unload_cursor(unloadCursor, unloadFile);
+            unloadFile.close();
+            unloadCursor.close();
+            unloadPrep.close();
+        } //end if
         System.out.println( DateUtils.now("HH:mm:ss")+
             " Unloaded "+rows+" rows from table "+tName+" into file "+fName);
     } catch (SQLException e) {
@@ -3488,6 +7100,258 @@ public static void do_unload_sql( String sql_, Connection conn) {
 } //end function { do_unload_sql( sql_ ) }
 
 
+/**
+ * #########################################################
+ *  Purpose: Open a buffered unload file. A file name ending
+ *  in ".gz" is written gzip compressed.
+ * #########################################################
+ * @param fName
+ * @return
+ * @throws java.io.IOException
+ */
+public static Writer open_unload_file( String fName ) throws IOException {
+    OutputStream out = new FileOutputStream(fName, false);  // Over write.
+    if (fName.endsWith(".gz")) {
+        out = new java.util.zip.GZIPOutputStream(out, 65536);
+    } //end if
+    return new BufferedWriter(new OutputStreamWriter(out), 65536);
+} //end function { open_unload_file() }
+
+
+/**
+ * #########################################################
+ *  Purpose: Write the rows of a cursor to an unload file,
+ *  one pipe delimited line per row.
+ *  Returns: The number of rows written.
+ * #########################################################
+ * @param unloadCursor
+ * @param unloadFile
+ * @return
+ * @throws java.sql.SQLException
+ * @throws java.io.IOException
+ */
+public static long unload_cursor( ResultSet unloadCursor, Writer unloadFile )
+        throws SQLException, IOException {
+    int cols = unloadCursor.getMetaData().getColumnCount();
+    long rows = 0;
+    StringBuilder unloadLine = new StringBuilder(256);      //# Reused for every row.
+    while (unloadCursor.next()) {
+        unloadLine.setLength(0);
+        for (int i=1;i<=cols;i++) {
+            unloadLine.append(unloadCursor.getString(i)).append('|');
+        }
+        unloadLine.append(lineSeparator);
+        unloadFile.append(unloadLine);
+        rows++;
+    }
+    return rows;
+} //end function { unload_cursor() }
+
+
+/**
+ * #########################################################
+ *  Purpose: The -U option. Split the unload query into key
+ *  ranges on a numeric column, unload each range on its own
+ *  connection into a part file, and join the parts in key
+ *  order. Gzip parts join into one valid gzip file.
+ *  NB. Temp tables are not visible to the extra connections.
+ *  Returns: The rows unloaded, or -1 if the query could not
+ *  be split, in which case the caller unloads it serially.
+ * #########################################################
+ * @param sqlText
+ * @param conn
+ * @param fName
+ * @return
+ * @throws java.lang.Exception
+ */
+public static long do_parallel_unload( String sqlText, Connection conn, String fName )
+        throws Exception {
+    final int n = unloadThreads;
+    BigDecimal lo = null, hi = null;
+    Statement range = conn.createStatement();
+    try {
+        ResultSet rangeCursor = range.executeQuery(
+            "select min("+unloadKeyColumn+"), max("+unloadKeyColumn+") from ("
+            +sqlText+") unload_q");
+        if (rangeCursor.next()) {
+            lo = rangeCursor.getBigDecimal(1);
+            hi = rangeCursor.getBigDecimal(2);
+        } //end if
+    } catch (SQLException e) {                          //# Eg. not numeric, or not a derived table.
+        System.out.println("Warning 149: do_parallel_unload(): SQLException ErrCode: "
+            +e.getErrorCode()+": "+e+". The key range of the -U column "+unloadKeyColumn
+            +" could not be found. Unloading serially.");
+        return -1;
+    } finally {
+        range.close();
+    }
+    if (lo == null || hi == null || lo.compareTo(hi) == 0) {
+        return -1;
+    } //end if
+    //# Boundaries: part 0 also takes the nulls, the last part takes the max.
+    final BigDecimal[] bound = new BigDecimal[n+1];
+    BigDecimal step = hi.subtract(lo).divide(new BigDecimal(n), 10, RoundingMode.HALF_UP);
+    for (int k=0; k<=n; k++) {
+        bound[k] = lo.add(step.multiply(new BigDecimal(k)));
+    } //end for
+    final String[] url = connection_url_user_password(conn);
+    if (url == null) {
+        return -1;
+    } //end if
+    final String partSql = "select * from ("+sqlText+") unload_q where ";
+    final String[] partName = new String[n];
+    final long[] partRows = new long[n];
+    final Exception[] partErr = new Exception[n];
+    Thread[] worker = new Thread[n];
+    System.out.println( DateUtils.now("HH:mm:ss")+
+        " Unloading in "+n+" parallel key ranges of: "+unloadKeyColumn);
+    for (int k=0; k<n; k++) {
+        final int part = k;
+        partName[k] = fName+".part"+k;
+        worker[k] = new Thread("metaqa unload "+k) {
+            public void run() {
+                Connection partConn = null;
+                Writer partFile = null;
+                try {
+                    partConn = DriverManager.getConnection(url[0], url[1], url[2]);
+                    String where =
+                        (part == 0   ? "("+unloadKeyColumn+" < ? or "+unloadKeyColumn+" is null)"
+                        : part == n-1 ? unloadKeyColumn+" >= ?"
+                        :               unloadKeyColumn+" >= ? and "+unloadKeyColumn+" < ?");
+                    PreparedStatement partPrep = partConn.prepareStatement(partSql+where,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    partPrep.setFetchSize(unloadFetchSize);
+                    if (part == 0) {
+                        partPrep.setBigDecimal(1, bound[1]);
+                    } else {
+                        partPrep.setBigDecimal(1, bound[part]);
+                        if (part < n-1) {
+                            partPrep.setBigDecimal(2, bound[part+1]);
+                        } //end if
+                    } //end if
+                    partFile = open_unload_file(partName[part]);
+                    ResultSet partCursor = partPrep.executeQuery();
+                    partRows[part] = unload_cursor(partCursor, partFile);
+                    partCursor.close();
+                    partPrep.close();
+                } catch (Exception e) {
+                    partErr[part] = e;
+                } finally {
+                    try {
+                        if (partFile != null) {
+                            partFile.close();
+                        } //end if
+                    } catch (IOException e) {
+                        if (partErr[part] == null) {
+                            partErr[part] = e;
+                        } //end if
+                    }
+                    try {
+                        if (partConn != null) {
+                            partConn.close();
+                        } //end if
+                    } catch (SQLException e) {
+                        // Do nothing.
+                    }
+                }
+            }
+        };
+        worker[k].start();
+    } //end for
+    long rows = 0;
+    Exception failed = null;
+    for (int k=0; k<n; k++) {
+        worker[k].join();                               //# All of them, before any part is removed.
+        if (partErr[k] != null && failed == null) {
+            failed = partErr[k];
+        } //end if
+        rows += partRows[k];
+    } //end for
+    if (failed != null) {                               //# Leave no part files behind.
+        for (int k=0; k<n; k++) {
+            File part = new File(partName[k]);
+            if (part.isFile()) {
+                part.delete();
+            } //end if
+        } //end for
+        throw failed;
+    } //end if
+    //# Join the parts in key order.
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(fName, false), 65536);
+    byte[] buf = new byte[65536];
+    for (int k=0; k<n; k++) {
+        InputStream in = new FileInputStream(partName[k]);
+        for (int got = in.read(buf); got > 0; got = in.read(buf)) {
+            out.write(buf, 0, got);
+        } //end for
+        in.close();
+        new File(partName[k]).delete();
+    } //end for
+    out.close();
+    return rows;
+} //end function { do_parallel_unload() }
+
+
+/**
+ * #########################################################
+ *  Purpose: Find the url, user and password that made one
+ *  of our connections, so that more can be made like it.
+ *  Returns: { url, user, password } or null if unknown.
+ * #########################################################
+ * @param conn
+ * @return
+ */
+public static String[] connection_url_user_password( Connection conn ) {
+    if (conn == targetJdbcConn) {
+        return new String[] {targetJdbcUrl, targetJdbcUserId, targetJdbcPassword};
+    } else if (conn == sourceJdbcConn) {
+        return new String[] {sourceJdbcUrl, sourceJdbcUserId, sourceJdbcPassword};
+    } else if (conn == metaJdbcConn) {
+        return new String[] {metaJdbcUrl, metaJdbcUserId, metaJdbcPassword};
+    } //end if
+    return null;
+} //end function { connection_url_user_password() }
+
+
+/**
+##########################################################
+# Purpose: Split a delimited line into a reused array, without
+#          the regular expression and array of String.split().
+#          A single trailing delimiter, as written by the
+#          unload statement, does not start another field.
+# Returns: The number of fields in the line, even if <into>
+#          is too small (or null) to hold them all.
+##########################################################
+ *
+ * @param line
+ * @param delim
+ * @param into Receives the fields from index 0.
+ * @return
+ */
+public static int split_delimited_line(String line, char delim, String[] into) {
+    int len = line.length();
+    if (len > 0 && line.charAt(len-1) == delim) {
+        len--;                          //# Ignore the terminating delimiter.
+    } //end if
+    int n = 0, from = 0, to = 0;
+    while (true) {
+        to = line.indexOf(delim, from);
+        if (to < 0 || to > len) {
+            to = len;
+        } //end if
+        if (into != null && n < into.length) {
+            into[n] = line.substring(from, to);
+        } //end if
+        n++;
+        if (to >= len) {
+            break; // while
+        } //end if
+        from = to+1;
+    } //end while
+    return n;
+} //end function { split_delimited_line() }
+
+
 /**
 ##########################################################
 # Purpose: Replicates a string <n> times.
@@ -3551,7 +7415,6 @@ public static String build_input_sql_based_target_sql(String sql_) {
         System.out.println("Error: 77 the input sql does not begin with \"select\"");
         System.exit(77);
     }
-    prep_get_key_ind_and_type();
     //# Loop through the columns looking for "as" clauses between the "select" and the "from" for column name synonyms.
     while (!(sqlToken[i].equalsIgnoreCase("from"))) {
         array_boundary(j);
@@ -3591,38 +7454,10 @@ public static String build_input_sql_based_target_sql(String sql_) {
 
 /**
 ##########################################################
-# Purpose: Supposed to be a fast and efficient way to get the
-#          indicators for key columns and the data types of each column.
-##########################################################
- * JDBC Example code:
- * http://www.jdbc-tutorial.com/jdbc-prepared-statements.htm
-**/
-public static void prep_get_key_ind_and_type() { //function prep_get_key_ind_and_type()
-    String sql_ = null;
-    try { //whenever error continue
-        sql_ =
-            "select upper(primary_unique_key_ind),    "+
-            "       upper(source_field_type)          "+
-            " from meta_dwh_table_field               "+
-            " where table_name = ? and field_name = ? ";
-        metaKeyTypePrep = metaJdbcConn.prepareStatement(sql_);
-    } catch (SQLException e) { //whenever error stop
-        System.out.println("Error 33: "+". SQLException ErrCode: "
-            +e.getErrorCode()+": "+e+". Could not prepare this query: "+sql_);
-        System.exit(33); //exit program 33
-    } catch (Exception e) {
-        System.out.println( "Error 99: prep_get_key_ind_and_type(): "+sql_+": "+e);
-        e.printStackTrace();
-        System.exit(99); //exit program 33
-    } finally { }
-} //end function { prep_get_key_ind_and_type() }
-
-
-/**
-##########################################################
-# Purpose: Lookup the key inicator from the meta-data.
-# Refer:   http://forum.java.sun.com/thread.jspa?threadID=677098&messageID=3951293
-#          http://java.sun.com/docs/books/tutorial/jdbc/basics/prepared.html
+# Purpose: Lookup the key inicator and the data type of a
+#          column from the prefetched meta-data.
+# Returns: { upper(primary_unique_key_ind), upper(source_field_type) }
+#          or two nulls if the column has no meta data.
 ##########################################################
  *
  * @param table_
@@ -3631,44 +7466,11 @@ public static void prep_get_key_ind_and_type() { //function prep_get_key_ind_and
  */
 public static String[] get_key_ind_and_type( String table_, String column_ ) { //function get_key_ind_and_type( table_, column_ )
     String[] retVals = new String[2];
-    ResultSet metaKeyAndTypeCursor = null;          //# Cursor for meta data key and type.
-    try {
-        metaKeyTypePrep.setString(1,table_);	    //# NB. index starts with 1
-        metaKeyTypePrep.setString(2,column_);
-        metaKeyAndTypeCursor = metaKeyTypePrep.executeQuery();
-        if (metaKeyAndTypeCursor.next()) {
-            //retVals[0]= key_ind_c.getString("primary_unique_key_ind");
-            retVals[0]= metaKeyAndTypeCursor.getString(1);
-            retVals[1]= metaKeyAndTypeCursor.getString("source_field_type".toUpperCase());
-        } else {
-            retVals[0]= null;
-            retVals[1]= null;
-        }
-        return retVals;
-    } catch (SQLException e) {
-        System.out.println("Error 34: SQLException: SQLException ErrCode: "
-            +e.getErrorCode()+": "+e +", on table: "
-            +table_+", and column: "+column_);
-        System.exit(34); //exit program 34
-    } catch (Exception e) {
-        System.out.println( "Error 100: get_key_ind_and_type(): "+e
-            +" on table: "+table_+" and column"+column_);
-        //e.printStackTrace();
-    } finally {
-        try {
-            metaKeyAndTypeCursor.close();
-        } catch (SQLException e) {
-            System.out.println(
-                "Error 42: get_key_ind_and_type(): SQLException ErrCode: "
-                +e.getErrorCode()+": "+e +" on table: "+table_
-                +" and column"+column_);
-            System.exit(42); //exit program 34
-        } catch (Exception e) {
-            System.out.println( "Error 108: get_key_ind_and_type(): "+e
-                +" on table: "+table_+" and column"+column_);
-            //e.printStackTrace();
-        }
-    }
+    String[] meta = (table_.equalsIgnoreCase(targetTable) ? meta_row(column_) : null);
+    if (meta != null) {
+        retVals[0]= (meta[_mKeyInd] == null ? null : meta[_mKeyInd].toUpperCase());
+        retVals[1]= (meta[_mType]   == null ? null : meta[_mType].toUpperCase());
+    } //end if
     return retVals;
 
     //# If not found, it"t not an error, "cos we can pick it up later with -isKeyColumn ?
@@ -3723,4 +7525,761 @@ class DateUtils {
 
     }
 } //end of Class DateUtils
+
+
+//=============================== CLASS Boundary ===============================
+/**
+ * A diff function for one column of the current row.
+ * See Metaqa.build_audit_plan().
+ **/
+interface ColumnDiff {
+    void diff(int i);
+} //end of Interface ColumnDiff
+
+//=============================== CLASS Boundary ===============================
+/**
+ * One source row passing through Metaqa.main_loop_pipelined().
+ * Array indexes start at 1.
+ **/
+class PipelineRow {
+    static final PipelineRow END = new PipelineRow(); //# Sent after the last row.
+    int rowNo;                      //# Source line/row number.
+    int fields;                     //# Source field count.
+    String[] src;                   //# Source cells.
+    String[] keys;                  //# Key values in key order.
+    String[] tgt;                   //# Target cells, null if the target row is missing.
+    Exception lookupError;          //# Set if the lookup failed.
+    long lookupNanos, fetchNanos;   //# Lookup and fetch times, for the metrics.
+    final java.util.concurrent.CountDownLatch looked =  //# Released when the lookup is done.
+        new java.util.concurrent.CountDownLatch(1);
+} //end of Class PipelineRow
+
+
+//=============================== CLASS Boundary ===============================
+/**
+ * The writer stage of Metaqa.main_loop_pipelined(). Each flush()
+ * hands the text written so far to a thread that writes it to
+ * <out>, so the caller does not wait on the disk. close() waits
+ * for everything to be written, and also happens at JVM exit.
+ **/
+class QueuedWriter extends Writer {
+    private static final String END = new String("");  //# Compared by identity.
+    private final Writer out;
+    private final java.util.concurrent.BlockingQueue<String> queue;
+    private final StringBuilder pending = new StringBuilder();
+    private final Thread drain;
+    private volatile IOException failed = null;
+    private boolean closed = false;
+
+    QueuedWriter(Writer out_, int capacity) {
+        out = out_;
+        queue = new java.util.concurrent.ArrayBlockingQueue<String>(capacity);
+        drain = new Thread("metaqa writer") {
+            public void run() {
+                try {
+                    for (String text = queue.take(); text != END; text = queue.take()) {
+                        if (failed == null) {
+                            try {
+                                out.write(text);
+                            } catch (IOException e) {
+                                failed = e;          //# Keep taking, so writers never block.
+                            }
+                        } //end if
+                    } //end for
+                } catch (InterruptedException e) {
+                    // Ending anyway.
+                }
+            }
+        };
+        drain.setDaemon(true);
+        drain.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                try {
+                    QueuedWriter.this.close();
+                } catch (IOException e) {
+                    // Too late to report.
+                }
+            }
+        });
+    }
+
+    public synchronized void write(char[] buf, int off, int len) throws IOException {
+        pending.append(buf, off, len);
+        if (pending.length() >= 65536) {
+            flush();
+        } //end if
+    }
+
+    public synchronized void flush() throws IOException {
+        if (failed != null) {
+            throw failed;
+        } //end if
+        if (pending.length() > 0) {
+            put(pending.toString());
+            pending.setLength(0);
+        } //end if
+    }
+
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        } //end if
+        closed = true;
+        flush();
+        put(END);
+        try {
+            drain.join();
+        } catch (InterruptedException e) {
+            // Close anyway.
+        }
+        out.close();
+        if (failed != null) {
+            throw failed;
+        } //end if
+    }
+
+    private void put(String text) throws IOException {
+        try {
+            queue.put(text);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("QueuedWriter: "+e);
+        }
+    }
+} //end of Class QueuedWriter
+
+//=============================== CLASS Boundary ===============================
+/**
+ * A local copy of the TARGET table's audited columns for the -K option,
+ * made by Metaqa.make_target_snapshot(). <file> has a heading line naming
+ * the table, columns and keys, then one row per line in key order, '|'
+ * delimited with '\' escapes. <file>.idx holds the key and byte offset of
+ * every <every>th row, and a table of where each of those entries is.
+ * It is memory mapped, so a lookup is a binary search of it and one read
+ * of a block of rows, without the network. Array indexes start at 0.
+ **/
+class TargetSnapshot {
+    static final int every = 64;                //# Rows per index entry.
+    private final RandomAccessFile dataFile;
+    private final FileChannel data;
+    private final MappedByteBuffer idx;
+    private final int entries;                  //# Index entries.
+    private final long positionsAt;             //# Where the table of entry positions starts.
+    private final int fields;                   //# Columns per row.
+    private final int[] keyAt;                  //# The column of each key.
+    private final boolean[] numeric;            //# Compare this key as a number.
+    private ByteBuffer block = ByteBuffer.allocate(65536);
+    private int blockAt = -1;                   //# The entry of the rows in <rows>,
+    private String[][] rows = new String[0][];  //#   kept for the next lookup nearby.
+
+    private TargetSnapshot(RandomAccessFile dataFile_, MappedByteBuffer idx_, int fields_,
+            int[] keyAt_, boolean[] numeric_) {
+        dataFile = dataFile_;
+        data = dataFile_.getChannel();
+        idx = idx_;
+        entries = idx.getInt(idx.capacity() - 4);
+        positionsAt = idx.getLong(idx.capacity() - 12);
+        fields = fields_;
+        keyAt = keyAt_;
+        numeric = numeric_;
+    }
+
+    /**
+     * Open the snapshot in <file_>, if it was made with this <heading>.
+     * @return null if there is none, or it is of other columns.
+     */
+    static TargetSnapshot open(File file_, String heading, int fields_, int[] keyAt_,
+            boolean[] numeric_) throws IOException {
+        File idxFile = new File(file_.getPath()+".idx");
+        if (!file_.exists() || !idxFile.exists()) {
+            return null;
+        } //end if
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+            new FileInputStream(file_), "UTF-8"));
+        String line = in.readLine();
+        in.close();
+        if (!heading.equals(line)) {
+            return null;
+        } //end if
+        RandomAccessFile idxRaf = new RandomAccessFile(idxFile, "r");
+        MappedByteBuffer idx_ = idxRaf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, idxRaf.length());
+        idxRaf.close();                         //# The mapping stays valid.
+        return new TargetSnapshot(new RandomAccessFile(file_, "r"), idx_, fields_, keyAt_, numeric_);
+    }
+
+    /**
+     * Write the index of a snapshot: the entries, each the byte offset of
+     * a row and its key, then the position of each entry, then where that
+     * table starts and the entry count.
+     */
+    static void write_index(File idxFile, long[] offsets, List<String> keys) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(idxFile), 65536));
+        long[] positions = new long[keys.size()];
+        long at = 0;
+        for (int e=0; e<keys.size(); e++) {
+            byte[] key = keys.get(e).getBytes("UTF-8");
+            positions[e] = at;
+            out.writeLong(offsets[e]);
+            out.writeInt(key.length);
+            out.write(key);
+            at += 12 + key.length;
+        } //end for
+        for (int e=0; e<positions.length; e++) {
+            out.writeLong(positions[e]);
+        } //end for
+        out.writeLong(at);
+        out.writeInt(positions.length);
+        out.close();
+        if (at + 8L * positions.length + 12 > Integer.MAX_VALUE) {
+            throw new IOException("The snapshot index "+idxFile+" is too big to map.");
+        } //end if
+    }
+
+    /**
+     * The row with <key>, or null if there is none.
+     */
+    String[] lookup(String[] key) throws IOException {
+        int lo = 0, hi = entries - 1, at = -1;
+        while (lo <= hi) {                      //# The last entry not after <key>.
+            int mid = (lo + hi) >>> 1;
+            if (compare_keys(entry_key(mid), key, numeric) <= 0) {
+                at = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            } //end if
+        } //end while
+        if (at < 0) {
+            return null;
+        } //end if
+        if (at != blockAt) {
+            read_block(at);
+        } //end if
+        String[] rowKey = new String[keyAt.length];
+        for (String[] row : rows) {
+            for (int i=0; i<keyAt.length; i++) {
+                rowKey[i] = row[keyAt[i]];
+            } //end for
+            int cmp = compare_keys(rowKey, key, numeric);
+            if (cmp == 0) {
+                return row;
+            } else if (cmp > 0) {
+                break; // for
+            } //end if
+        } //end for
+        return null;
+    }
+
+    void close() throws IOException {
+        dataFile.close();
+    }
+
+    private long entry_position(int e) {
+        return idx.getLong((int) (positionsAt + 8L * e));
+    }
+
+    private String[] entry_key(int e) throws IOException {
+        int p = (int) entry_position(e);
+        byte[] key = new byte[idx.getInt(p + 8)];
+        for (int k=0; k<key.length; k++) {
+            key[k] = idx.get(p + 12 + k);
+        } //end for
+        return split_row(new String(key, "UTF-8"), keyAt.length);
+    }
+
+    private void read_block(int e) throws IOException {
+        long from = idx.getLong((int) entry_position(e));
+        long to = (e + 1 < entries ? idx.getLong((int) entry_position(e + 1)) : data.size());
+        if (block.capacity() < to - from) {
+            block = ByteBuffer.allocate((int) (to - from));
+        } //end if
+        block.clear();
+        block.limit((int) (to - from));
+        while (block.hasRemaining() && data.read(block, from + block.position()) > 0) {
+            // Until the block is read.
+        } //end while
+        String text = new String(block.array(), 0, block.position(), "UTF-8");
+        List<String[]> list = new ArrayList<String[]>(every);
+        for (int start = 0, end; start < text.length(); start = end + 1) {
+            end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            } //end if
+            list.add(split_row(text.substring(start, end), fields));
+        } //end for
+        rows = list.toArray(new String[list.size()][]);
+        blockAt = e;
+    }
+
+    /**
+     * A value for a snapshot line, with '\', '|' and line ends escaped.
+     * Null is written as nothing.
+     */
+    static String escape(String v) {
+        if (v == null) {
+            return "";
+        } //end if
+        if (v.indexOf('\\') < 0 && v.indexOf('|') < 0 && v.indexOf('\n') < 0 && v.indexOf('\r') < 0) {
+            return v;
+        } //end if
+        StringBuilder b = new StringBuilder(v.length() + 8);
+        for (int k=0; k<v.length(); k++) {
+            char ch = v.charAt(k);
+            switch (ch) {
+                case '\\': b.append("\\\\"); break;
+                case '|' : b.append("\\|");  break;
+                case '\n': b.append("\\n");  break;
+                case '\r': b.append("\\r");  break;
+                default  : b.append(ch);
+            } // end switch
+        } //end for
+        return b.toString();
+    }
+
+    /**
+     * Split an escaped '|' terminated line into <n> values. Empty ones,
+     * and missing ones, are null.
+     */
+    static String[] split_row(String line, int n) {
+        String[] row = new String[n];
+        StringBuilder b = new StringBuilder();
+        int f = 0;
+        for (int k=0; k<line.length(); k++) {
+            char ch = line.charAt(k);
+            if (ch == '\\' && k + 1 < line.length()) {
+                char next = line.charAt(++k);
+                b.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else if (ch == '|') {
+                if (f < n) {
+                    row[f++] = (b.length() == 0 ? null : b.toString());
+                } //end if
+                b.setLength(0);
+            } else {
+                b.append(ch);
+            } //end if
+        } //end for
+        return row;
+    }
+
+    /**
+     * Compare two keys in the order of ExternalSort.compare_keys().
+     */
+    static int compare_keys(String[] a, String[] b, boolean[] numeric_) {
+        return ExternalSort.compare_keys(ExternalSort.sort_key(a, numeric_),
+            ExternalSort.sort_key(b, numeric_));
+    }
+} //end of Class TargetSnapshot
+
+//=============================== CLASS Boundary ===============================
+/**
+ * A pipe delimited flat-file sorted by key for the -F option, in bounded
+ * memory: the data lines are read <runRows> at a time, each run sorted and
+ * written to a temp file on its own thread, then all the runs are merged as
+ * next() is called. A file of one run is not written out. HEADER| lines are
+ * dropped and the TRAILER| line kept aside. Each line keeps its number among
+ * the data lines, from 1, which also orders lines with the same key.
+ * The keys are fields <keyAt>, from 1, as split_flat_line() numbers them.
+ **/
+class ExternalSort {
+
+    /** A data line, its number and its key. */
+    static class Line {
+        final long no;
+        final String text;
+        final Object[] key;
+        Line(long no_, String text_, Object[] key_) { no = no_; text = text_; key = key_; }
+    }
+
+    /** A sorted run being merged, and its next line. */
+    private static class Run {
+        Line head;
+        BufferedReader in;                      //# Or, for a run still in memory,
+        Iterator<Line> list;                    //#   its lines.
+    }
+
+    static final Comparator<Line> order = new Comparator<Line>() {
+        public int compare(Line a, Line b) {
+            int cmp = compare_keys(a.key, b.key);
+            return (cmp != 0 ? cmp : (a.no < b.no ? -1 : a.no > b.no ? 1 : 0));
+        }
+    };
+    private final int[] keyAt;
+    private final boolean[] numeric;
+    private final List<File> runFiles = new ArrayList<File>();
+    private final PriorityQueue<Run> heads = new PriorityQueue<Run>(16, new Comparator<Run>() {
+        public int compare(Run a, Run b) { return order.compare(a.head, b.head); }
+    });
+    long lines = 0;                             //# The data lines.
+    String trailer = null;                      //# The TRAILER| line, if any.
+
+    private ExternalSort(int[] keyAt_, boolean[] numeric_) {
+        keyAt = keyAt_;
+        numeric = numeric_;
+    }
+
+    /**
+     * Sort <file_> by its key fields on up to <threads> threads at a time,
+     * ready to be read in key order with next().
+     */
+    static ExternalSort sort(File file_, int[] keyAt_, boolean[] numeric_, int runRows,
+            int threads) throws IOException {
+        final ExternalSort sorted = new ExternalSort(keyAt_, numeric_);
+        final Semaphore inMemory = new Semaphore(threads);  //# Runs sorting, besides the one read.
+        ExecutorService sorters = Executors.newFixedThreadPool(threads);
+        List<Future<File>> written = new ArrayList<Future<File>>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+            new FileInputStream(file_)), 65536);
+        try {
+            List<Line> run = new ArrayList<Line>();
+            for (String text = in.readLine(); text != null; text = in.readLine()) {
+                if (text.startsWith("HEADER|")) {
+                    continue; // for
+                } else if (text.startsWith("TRAILER|")) {
+                    sorted.trailer = text;
+                    continue; // for
+                } //end if
+                run.add(sorted.line(++sorted.lines, text));
+                if (run.size() == runRows) {
+                    inMemory.acquireUninterruptibly();
+                    final List<Line> full = run;
+                    written.add(sorters.submit(new Callable<File>() {
+                        public File call() throws IOException {
+                            try {
+                                return write_run(full);
+                            } finally {
+                                inMemory.release();
+                            }
+                        }
+                    }));
+                    run = new ArrayList<Line>(runRows);
+                } //end if
+            } //end for
+            for (Future<File> f : written) {
+                try {
+                    sorted.runFiles.add(f.get());
+                } catch (ExecutionException e) {
+                    throw new IOException("Sorting "+file_+": "+e.getCause());
+                } catch (InterruptedException e) {
+                    throw new IOException("Sorting "+file_+": "+e);
+                }
+            } //end for
+            for (File f : sorted.runFiles) {
+                Run r = new Run();
+                r.in = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(f), "UTF-8"), 65536);
+                sorted.advance(r);
+            } //end for
+            if (!run.isEmpty()) {                       //# The last run stays in memory.
+                Collections.sort(run, order);
+                Run r = new Run();
+                r.list = run.iterator();
+                sorted.advance(r);
+            } //end if
+        } finally {
+            in.close();
+            sorters.shutdown();
+        }
+        return sorted;
+    }
+
+    /** The next line in key order, or null at the end. */
+    Line next() throws IOException {
+        Run r = heads.poll();
+        if (r == null) {
+            return null;
+        } //end if
+        Line line = r.head;
+        advance(r);
+        return line;
+    }
+
+    /** How many runs were spilled to disk. */
+    int runs() {
+        return runFiles.size();
+    }
+
+    /** Close and delete the runs. */
+    void close() {
+        for (Run r : heads) {
+            try {
+                if (r.in != null) {
+                    r.in.close();
+                } //end if
+            } catch (IOException e) {
+                // Deleted anyway.
+            }
+        } //end for
+        heads.clear();
+        for (File f : runFiles) {
+            f.delete();
+        } //end for
+    }
+
+    private void advance(Run r) throws IOException {
+        if (r.list != null) {
+            r.head = (r.list.hasNext() ? r.list.next() : null);
+        } else {
+            String text = r.in.readLine();             //# <no>|<line>
+            if (text == null) {
+                r.in.close();
+                r.head = null;
+            } else {
+                int bar = text.indexOf('|');
+                r.head = line(Long.parseLong(text.substring(0, bar)), text.substring(bar + 1));
+            } //end if
+        } //end if
+        if (r.head != null) {
+            heads.add(r);
+        } //end if
+    }
+
+    private Line line(long no, String text) {
+        String[] vals = new String[keyAt.length];
+        for (int i=0; i<keyAt.length; i++) {
+            vals[i] = field(text, keyAt[i]);
+        } //end for
+        return new Line(no, text, sort_key(vals, numeric));
+    }
+
+    private static File write_run(List<Line> run) throws IOException {
+        Collections.sort(run, order);
+        File f = File.createTempFile("metaqa", ".run");
+        f.deleteOnExit();
+        Writer out = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(f), "UTF-8"), 65536);
+        try {
+            for (Line l : run) {
+                out.write(Long.toString(l.no));
+                out.write('|');
+                out.write(l.text);
+                out.write('\n');
+            } //end for
+        } finally {
+            out.close();
+        }
+        return f;
+    }
+
+    /**
+     * Field <n>, from 1, of a trimmed '|' delimited line, or "" if the line
+     * is shorter.
+     */
+    static String field(String text, int n) {
+        String line = text.trim();
+        int at = 0;
+        for (int k=1; k<n; k++) {
+            at = line.indexOf('|', at) + 1;
+            if (at == 0) {
+                return "";
+            } //end if
+        } //end for
+        int bar = line.indexOf('|', at);
+        return line.substring(at, (bar < 0 ? line.length() : bar));
+    }
+
+    /**
+     * The key to sort <vals> by: the trimmed text, or a number where
+     * <numeric_> says and it is one. Null is the empty string.
+     */
+    static Object[] sort_key(String[] vals, boolean[] numeric_) {
+        Object[] key = new Object[vals.length];
+        for (int i=0; i<vals.length; i++) {
+            String v = (vals[i] == null ? "" : vals[i].trim());
+            key[i] = v;
+            if (numeric_[i] && Metaqa.is_numeric(v)) {
+                try {
+                    key[i] = new BigDecimal(v);
+                } catch (NumberFormatException e) {
+                    // Text then.
+                }
+            } //end if
+        } //end for
+        return key;
+    }
+
+    /**
+     * Compare two sort_key()s. Numbers come before text, so that a key
+     * column of mixed values still sorts one way.
+     */
+    static int compare_keys(Object[] a, Object[] b) {
+        for (int i=0; i<a.length; i++) {
+            int cmp;
+            if (a[i] instanceof BigDecimal) {
+                cmp = (b[i] instanceof BigDecimal ? ((BigDecimal) a[i]).compareTo((BigDecimal) b[i]) : -1);
+            } else {
+                cmp = (b[i] instanceof BigDecimal ? 1 : ((String) a[i]).compareTo((String) b[i]));
+            } //end if
+            if (cmp != 0) {
+                return cmp;
+            } //end if
+        } //end for
+        return 0;
+    }
+} //end of Class ExternalSort
+
+//=============================== CLASS Boundary ===============================
+/**
+ * The -G profile of one column on one side: how many values are not null,
+ * and the sum, least and greatest of the numbers, or the earliest and latest
+ * dates. See Metaqa.profile_columns(). For a flat-file, add() each value and
+ * whether all are numbers, or dates, is found on the way.
+ **/
+class ColumnProfile {
+    long values = 0;                    //# Not null. In profile [0], the rows.
+    boolean numeric = true;             //# Every value is a number,
+    boolean date = true;                //#   or a date.
+    BigDecimal sum = BigDecimal.ZERO, min = null, max = null;
+    Date first = null, last = null;
+    private SimpleDateFormat format = null; //# Of the flat-file dates.
+
+    void add(String v) {
+        if (v == null || Metaqa.is_blank(v)) {
+            return;                             //# Loaded as null.
+        } //end if
+        values++;
+        v = v.trim();
+        if (numeric) {
+            try {
+                number(new BigDecimal(v));
+            } catch (NumberFormatException e) {
+                numeric = false;
+            }
+        } //end if
+        if (date) {
+            Date d = parse(v);
+            if (d == null) {
+                format = Metaqa.guessed_date_format(v); //# Another format, maybe.
+                d = parse(v);
+            } //end if
+            if (d == null) {
+                date = false;
+            } else {
+                date(d);
+            } //end if
+        } //end if
+    }
+
+    void number(BigDecimal n) {
+        sum = sum.add(n);
+        min = (min == null || n.compareTo(min) < 0 ? n : min);
+        max = (max == null || n.compareTo(max) > 0 ? n : max);
+    }
+
+    void date(Date d) {
+        first = (first == null || d.before(first) ? d : first);
+        last = (last == null || d.after(last) ? d : last);
+    }
+
+    private Date parse(String v) {
+        if (format == null) {
+            return null;
+        } //end if
+        java.text.ParsePosition at = new java.text.ParsePosition(0);
+        Date d = format.parse(v, at);
+        return (at.getIndex() == v.length() ? d : null);
+    }
+} //end of Class ColumnProfile
+
+//=============================== CLASS Boundary ===============================
+/**
+ * The difference summary of one column, kept as Metaqa.report_inequality()
+ * reports each difference, in memory that does not grow with the run: the
+ * counts, the numeric deltas (source - TARGET) by size, and the most
+ * frequent (TARGET, source) value pairs by the space saving sketch of
+ * Metwally et al. A pair's count is at most <error> too high.
+ **/
+class ColumnSummary {
+    static final int counters = 64;             //# Pairs tracked in the sketch.
+    static final int width = 60;                //# Longer values are cut.
+    static final String[] sizes = {"<0.01", "<0.1", "<1", "<10", "<100", "<1000", "<10^4", "<10^5", ">=10^5"};
+    long diffs = 0;
+    long targetNull = 0, sourceNull = 0;        //# One side null or blank, the other not.
+    long deltas = 0, higher = 0;                //# Numeric deltas, and of them where the source is higher.
+    double deltaSum = 0, deltaMin = 0, deltaMax = 0;
+    final long[] bySize = new long[sizes.length];
+    private final HashMap<String,long[]> pairs = new HashMap<String,long[]>(); //# {count, error}
+
+    void add(String tgt, String src, boolean numeric) {
+        diffs++;
+        boolean tBlank = (tgt == null || Metaqa.is_blank(tgt));
+        boolean sBlank = (src == null || Metaqa.is_blank(src));
+        if (tBlank && !sBlank) {
+            targetNull++;
+        } else if (sBlank && !tBlank) {
+            sourceNull++;
+        } else if (numeric && !tBlank) {
+            try {
+                delta(new BigDecimal(src.trim()).subtract(new BigDecimal(tgt.trim())).doubleValue());
+            } catch (NumberFormatException e) {
+                // Not a number after all.
+            }
+        } //end if
+        count(cut(Metaqa.see_a_null(tgt))+"\t"+cut(Metaqa.see_a_null(src)));
+    }
+
+    private void delta(double d) {
+        deltaMin = (deltas == 0 || d < deltaMin ? d : deltaMin);
+        deltaMax = (deltas == 0 || d > deltaMax ? d : deltaMax);
+        deltas++;
+        deltaSum += d;
+        higher += (d > 0 ? 1 : 0);
+        double size = Math.abs(d);
+        int b = 0;
+        for (double bound = 0.01; b < sizes.length - 1 && size >= bound; bound *= 10) {
+            b++;
+        } //end for
+        bySize[b]++;
+    }
+
+    private void count(String pair) {
+        long[] n = pairs.get(pair);
+        if (n != null) {
+            n[0]++;
+        } else if (pairs.size() < counters) {
+            pairs.put(pair, new long[] {1, 0});
+        } else {                                //# Take over the least counted pair.
+            String least = null;
+            long[] min = null;
+            for (Map.Entry<String,long[]> e : pairs.entrySet()) {
+                if (min == null || e.getValue()[0] < min[0]) {
+                    least = e.getKey();
+                    min = e.getValue();
+                } //end if
+            } //end for
+            pairs.remove(least);
+            pairs.put(pair, new long[] {min[0] + 1, min[0]});
+        } //end if
+    }
+
+    /** The <k> most counted pairs, as "count\terror\tTARGET\tsource". */
+    List<String> top(int k) {
+        List<Map.Entry<String,long[]>> all = new ArrayList<Map.Entry<String,long[]>>(pairs.entrySet());
+        Collections.sort(all, new Comparator<Map.Entry<String,long[]>>() {
+            public int compare(Map.Entry<String,long[]> a, Map.Entry<String,long[]> b) {
+                return (a.getValue()[0] > b.getValue()[0] ? -1 : a.getValue()[0] < b.getValue()[0] ? 1 : 0);
+            }
+        });
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<String,long[]> e : all.subList(0, Math.min(k, all.size()))) {
+            lines.add(e.getValue()[0]+"\t"+e.getValue()[1]+"\t"+e.getKey());
+        } //end for
+        return lines;
+    }
+
+    /** The delta sizes, as "<1:5 <10:2". */
+    String size_text() {
+        String text = "";
+        for (int b=0; b<sizes.length; b++) {
+            if (bySize[b] > 0) {
+                text += sizes[b]+":"+bySize[b]+" ";
+            } //end if
+        } //end for
+        return text.trim();
+    }
+
+    private static String cut(String v) {
+        return (v.length() > width ? v.substring(0, width)+"..." : v);
+    }
+} //end of Class ColumnSummary
 // End of file.
@@ -0,0 +1,686 @@
+/**
+   ################################################################
+   # metaqa: A program for comparing any source data
+   #         with any target data by using SQL.
+   # Copyright (C) 2006, 2007, 2008  Mark Besaans. South Africa.
+   #
+   # This program is free software; you can redistribute it and/or
+   # modify it under the terms of the GNU General Public License
+   # as published by the Free Software Foundation; either version 2
+   # of the License, or (at your option) any later version.
+   #
+   # Refer to gpl.txt distributed with this file.
+   ################################################################
+
+ * ###############################################################
+ * Purpose: Benchmarks of the metaqa compare hot path, so that a
+ *          change can be shown to be faster, or not.
+ * Input  : Command-line <parameters>. See usage().
+ * Output : Operations per second of each benchmark on standard output.
+ * Scenarios:
+ *      1) Micro benchmarks of the functions called for every cell,
+ *         over synthetic wide rows with a chosen mix of numeric, date
+ *         and character columns and a chosen match rate.
+ *      2) End-to-end compares of a flat file and of source SQL against
+ *         a target table in an embedded database (H2 or Derby), when
+ *         its JDBC driver is on the classpath. Each run is a separate
+ *         metaqa JVM, because metaqa keeps its state in statics and
+ *         ends with System.exit().
+ * Usage  : java -cp metaqa.jar:lib/*:h2.jar MetaqaBench -r 50000 -k 60
+ * ###############################################################
+ * Maintenance Programmer notes:
+ *      1) There is no JMH here, because there is no build to bring it
+ *      in. Each benchmark runs -w warm up iterations, to let the JIT
+ *      compile the hot path, and then -n measured iterations.
+ *      2) Every result is added into sink, so that the JIT can not
+ *      remove the work being measured.
+ *      3) Array indexes start at 1, as in metaqa.
+ * ###############################################################
+ */
+import java.io.*;
+import java.math.BigDecimal;
+import java.sql.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+public class MetaqaBench {
+    //# Command line settings.
+    static int warmups = 3;                      //# -w Warm up iterations per benchmark.
+    static int measures = 5;                     //# -n Measured iterations per benchmark.
+    static int rows = 20000;                     //# -r Synthetic rows.
+    static int cols = 40;                        //# -k Columns per row, including the key in column 1.
+    static int numericPct = 40;                  //# -N Percentage of numeric columns.
+    static int datePct = 30;                     //# -D Percentage of date columns. The rest are character.
+    static int matchPct = 95;                    //# -M Percentage of cells where source and target agree.
+    static String only = null;                   //# -b Run only benchmarks whose names contain this.
+    static String dbDriver = null;               //# -d Embedded database JDBC driver.
+    static String dbUrl = null;                  //# -d Embedded database JDBC url.
+    static final String dbUser = "metaqa";
+    static final String dbPassword = "bench";
+
+    //# Synthetic data.
+    static char[] colType = null;                //# Metaqa._numeric, _date or _character per column.
+    static String[] colName = null;              //# k, c2, c3, ...
+    static String[][] src = null;                //# Source cells, [row][col].
+    static String[][] tgt = null;                //# Target cells, [row][col].
+    static String flatText = null;               //# The source rows as a pipe delimited file.
+    static final String srcDateFormat = "dd/MM/yyyy";
+    static final String tgtDateFormat = "yyyy-MM-dd";
+
+    static long sink = 0;                        //# Consumes results. See note 2.
+
+/**
+##########################################################
+# Purpose: One benchmark. run() does one iteration and
+#          returns the number of operations it did.
+##########################################################
+**/
+abstract static class Case {
+    String name;
+    Case(String name_) { name = name_; }
+    abstract long run() throws Exception;
+} //end of Class Case
+
+
+/**
+ * @param args . Refer to the usage() method.
+ **/
+public static void main(String[] args) {
+    command_line(args);
+    generate_rows();
+    System.out.println("MetaqaBench: "+rows+" rows of "+cols+" columns, "
+        +numericPct+"% numeric, "+datePct+"% date, "+matchPct+"% matching. "
+        +warmups+" warm up and "+measures+" measured iterations.");
+    System.out.println(String.format("%-34s %14s %12s %12s",
+        "Benchmark", "ops/s", "ns/op", "+/- ns/op"));
+    for (Case b : micro_benchmarks()) {
+        if (only == null || b.name.indexOf(only) >= 0) {
+            measure(b, warmups, measures);
+        } //end if
+    } //end for
+    if (find_embedded_database()) {
+        for (Case b : end_to_end_benchmarks()) {
+            if (only == null || b.name.indexOf(only) >= 0) {
+                measure(b, 0, Math.min(measures, 3));
+            } //end if
+        } //end for
+    } else {
+        System.out.println("Skipping the end-to-end benchmarks: No H2 or Derby JDBC driver"
+            +" on the classpath. Add one, or name one with -d driver url.");
+    } //end if
+    System.out.println("sink: "+sink);
+} //end function { main() }
+
+
+/**
+##########################################################
+# Purpose: Parse the command line.
+##########################################################
+ *
+ * @param args
+ */
+static void command_line(String[] args) {
+    try {
+        for (int i=0; i<args.length; i++) {
+            String a = args[i];
+            if      (a.equals("-w")) { warmups    = Integer.parseInt(args[++i]); }
+            else if (a.equals("-n")) { measures   = Integer.parseInt(args[++i]); }
+            else if (a.equals("-r")) { rows       = Integer.parseInt(args[++i]); }
+            else if (a.equals("-k")) { cols       = Integer.parseInt(args[++i]); }
+            else if (a.equals("-N")) { numericPct = Integer.parseInt(args[++i]); }
+            else if (a.equals("-D")) { datePct    = Integer.parseInt(args[++i]); }
+            else if (a.equals("-M")) { matchPct   = Integer.parseInt(args[++i]); }
+            else if (a.equals("-b")) { only       = args[++i]; }
+            else if (a.equals("-d")) { dbDriver   = args[++i]; dbUrl = args[++i]; }
+            else { usage(); System.exit(1); }
+        } //end for
+    } catch (Exception e) {         //# A missing or non-numeric value.
+        usage();
+        System.exit(1);
+    }
+    if (cols < 2 || rows < 1 || measures < 1 || numericPct + datePct > 100) {
+        usage();
+        System.exit(1);
+    } //end if
+} //end function { command_line() }
+
+
+static void usage() {
+    System.out.println(
+ "Usage: java MetaqaBench [-w warmups] [-n measures] [-r rows] [-k columns]"
++" [-N numeric%] [-D date%] [-M match%] [-b name] [-d driver url]"
++"\n   -w warmups        Warm up iterations per benchmark. Default 3."
++"\n   -n measures       Measured iterations per benchmark. Default 5."
++"\n   -r rows           Synthetic rows. Default 20000."
++"\n   -k columns        Columns per row, including the key. Default 40, minimum 2."
++"\n   -N numeric%       Percentage of numeric columns. Default 40."
++"\n   -D date%          Percentage of date columns. Default 30. The rest are character."
++"\n   -M match%         Percentage of cells where source and target agree. Default 95."
++"\n   -b name           Run only the benchmarks with <name> in their name."
++"\n   -d driver url     The embedded database for the end-to-end benchmarks."
++"\n                     Default: H2 or Derby in a temporary directory."
+    );
+} //end function { usage() }
+
+
+/**
+##########################################################
+# Purpose: Make the synthetic rows. The same seed always
+#          gives the same rows, so runs can be compared.
+##########################################################
+**/
+static void generate_rows() {
+    Random rnd = new Random(20061019L);
+    SimpleDateFormat sFmt = new SimpleDateFormat(srcDateFormat);
+    SimpleDateFormat tFmt = new SimpleDateFormat(tgtDateFormat);
+    colType = new char[cols+1];
+    colName = new String[cols+1];
+    for (int j=1; j<=cols; j++) {
+        int pick = rnd.nextInt(100);
+        colType[j] = (j == 1 || pick < numericPct) ? Metaqa._numeric
+                   : (pick < numericPct + datePct) ? Metaqa._date
+                   :                                 Metaqa._character;
+        colName[j] = (j == 1 ? "k" : "c"+j);
+    } //end for
+    src = new String[rows][cols+1];
+    tgt = new String[rows][cols+1];
+    StringBuilder flat = new StringBuilder(rows * cols * 10);
+    for (int r=0; r<rows; r++) {
+        for (int j=1; j<=cols; j++) {
+            boolean differ = (j > 1 && rnd.nextInt(100) >= matchPct);
+            if (j == 1) {                                       //# The key.
+                src[r][j] = tgt[r][j] = String.valueOf(r+1);
+            } else if (colType[j] == Metaqa._numeric) {
+                int v = rnd.nextInt(100000000);
+                src[r][j] = decimal(v);
+                tgt[r][j] = decimal(differ ? v+1 : v);
+            } else if (colType[j] == Metaqa._date) {
+                long day = 86400000L * (10000 + rnd.nextInt(10000));
+                src[r][j] = sFmt.format(new java.util.Date(day));
+                tgt[r][j] = tFmt.format(new java.util.Date(differ ? day + 86400000L : day));
+            } else {
+                String v = "v"+Long.toString(rnd.nextLong() & 0xffffffffffL, 36);
+                src[r][j] = v;
+                tgt[r][j] = (differ ? v+"x" : v);
+            } //end if
+            flat.append(src[r][j]).append(j < cols ? "|" : "\n");
+        } //end for
+    } //end for
+    flatText = flat.toString();
+} //end function { generate_rows() }
+
+
+/**
+##########################################################
+# Purpose: Format cents as a decimal(12,2) string.
+##########################################################
+**/
+static String decimal(int cents) {
+    int c = cents % 100;
+    return (cents / 100)+(c < 10 ? ".0" : ".")+c;
+} //end function { decimal() }
+
+
+/**
+##########################################################
+# Purpose: Point the metaqa globals at the synthetic rows
+#          and send its spreadsheet nowhere.
+##########################################################
+**/
+static void set_up_metaqa() {
+    Metaqa.size_columns(cols);
+    Metaqa.dFmtT = new SimpleDateFormat(tgtDateFormat);
+    for (int j=1; j<=cols; j++) {
+        Metaqa.c[j] = colName[j];
+        Metaqa._comparisonType[j] = colType[j];
+        Metaqa.dFmtS[j] = (colType[j] == Metaqa._date ? new SimpleDateFormat(srcDateFormat) : null);
+    } //end for
+    Metaqa._key_count = 1;
+    Metaqa.p[1] = "1";
+    Metaqa._max_err = Integer.MAX_VALUE;
+    Metaqa._max_line_err = Integer.MAX_VALUE;
+    Metaqa.suppressWarnings = true;
+    Metaqa.sourceDateFormat = null;
+    Metaqa.spreadSheet = new PrintWriter(new Writer() {
+        public void write(char[] buf, int off, int len) { sink += len; }
+        public void flush() { }
+        public void close() { }
+    });
+} //end function { set_up_metaqa() }
+
+
+/**
+##########################################################
+# Purpose: Copy synthetic row <r> into metaqa's s[] and t[].
+##########################################################
+**/
+static void load_row(int r) {
+    System.arraycopy(src[r], 1, Metaqa.s, 1, cols);
+    System.arraycopy(tgt[r], 1, Metaqa.t, 1, cols);
+    Metaqa.p[1] = src[r][1];
+} //end function { load_row() }
+
+
+/**
+##########################################################
+# Purpose: The column numbers of one type, or of all types
+#          if type_ is blank.
+##########################################################
+**/
+static int[] columns_of(char type_) {
+    int n = 0;
+    int[] of = new int[cols];
+    for (int j=1; j<=cols; j++) {
+        if (type_ == ' ' || colType[j] == type_) {
+            of[n++] = j;
+        } //end if
+    } //end for
+    return Arrays.copyOf(of, n);
+} //end function { columns_of() }
+
+
+/**
+##########################################################
+# Purpose: The micro benchmarks. Each one covers every
+#          row once per iteration.
+##########################################################
+**/
+static List<Case> micro_benchmarks() {
+    set_up_metaqa();
+    final int[] numericCols = columns_of(Metaqa._numeric);
+    final int[] dateCols    = columns_of(Metaqa._date);
+    final int[] allCols     = columns_of(' ');
+    List<Case> list = new ArrayList<Case>();
+    list.add(new Case("read_flat_file_line_into_array") {
+        long run() throws Exception {
+            Metaqa.flat_input_file = new BufferedReader(new StringReader(flatText), 65536);
+            long n = 0;
+            while (Metaqa.read_flat_file_line_into_array() != null) {
+                sink += Metaqa.src_field_count;
+                n++;
+            } //end while
+            return n;
+        }
+    });
+    list.add(new Case("is_numeric") {
+        long run() {
+            long n = 0;
+            for (int r=0; r<rows; r++) {
+                for (int j : allCols) {
+                    if (Metaqa.is_numeric(src[r][j])) { sink++; }
+                    n++;
+                } //end for
+            } //end for
+            return n;
+        }
+    });
+    list.add(new Case("is_date") {
+        long run() {
+            long n = 0;
+            for (int r=0; r<rows; r++) {
+                for (int j : allCols) {
+                    if (Metaqa.is_date(src[r][j])) { sink++; }
+                    n++;
+                } //end for
+            } //end for
+            return n;
+        }
+    });
+    list.add(new Case("guessed_date_format") {
+        long run() {
+            long n = 0;
+            int each = Math.max(1, rows / 100);  //# It is only called once per column, so sample the rows.
+            for (int r=0; r<rows; r+=each) {
+                for (int j : dateCols) {
+                    SimpleDateFormat f = Metaqa.guessed_date_format(src[r][j]);
+                    if (f != null) { sink += f.toPattern().length(); }
+                    n++;
+                } //end for
+            } //end for
+            return n;
+        }
+    });
+    list.add(new Case("numeric_diff") {
+        long run() { return diff_all(numericCols, 'N'); }
+    });
+    list.add(new Case("date_diff") {
+        long run() { return diff_all(dateCols, 'D'); }
+    });
+    list.add(new Case("clever_diff") {
+        long run() { return diff_all(allCols, 'X'); }
+    });
+    list.add(new Case("compare_audited_columns") {
+        long run() {
+            Metaqa.auditColCount = -1;
+            Metaqa.tgt_col_count = cols;
+            Metaqa.isKeyColumn = new boolean[cols+2];
+            Metaqa.isKeyColumn[1] = true;
+            Metaqa._columnsWithErrors = 0;
+            for (int r=0; r<rows; r++) {
+                load_row(r);
+                Metaqa.compare_audited_columns(cols);
+            } //end for
+            sink += Metaqa._columnsWithErrors;
+            return (long) rows * (cols-1);
+        }
+    });
+    list.add(new Case("report_inequality") {
+        long run() {
+            Metaqa._columnsWithErrors = 0;
+            for (int r=0; r<rows; r++) {
+                load_row(r);
+                Metaqa.report_inequality(1 + r % cols);
+            } //end for
+            sink += Metaqa._columnsWithErrors;
+            return rows;
+        }
+    });
+    return list;
+} //end function { micro_benchmarks() }
+
+
+/**
+##########################################################
+# Purpose: Run one diff function over the given columns of
+#          every row. N numeric_diff, D date_diff, else
+#          clever_diff.
+##########################################################
+**/
+static long diff_all(int[] on, char which) {
+    long n = 0;
+    Metaqa._columnsWithErrors = 0;
+    for (int r=0; r<rows; r++) {
+        load_row(r);
+        for (int j : on) {
+            if      (which == 'N') { Metaqa.numeric_diff(j); }
+            else if (which == 'D') { Metaqa.date_diff(j); }
+            else                   { Metaqa.clever_diff(j); }
+            n++;
+        } //end for
+    } //end for
+    sink += Metaqa._columnsWithErrors;
+    return n;
+} //end function { diff_all() }
+
+
+/**
+##########################################################
+# Purpose: Time <warm> plus <meas> iterations of a benchmark
+#          and print the measured rate.
+##########################################################
+**/
+static void measure(Case b, int warm, int meas) {
+    double[] nsPerOp = new double[meas];
+    try {
+        for (int i=0; i<warm; i++) {
+            b.run();
+        } //end for
+        for (int i=0; i<meas; i++) {
+            long t0 = System.nanoTime();
+            long ops = b.run();
+            nsPerOp[i] = (double) (System.nanoTime() - t0) / Math.max(1, ops);
+        } //end for
+    } catch (Exception e) {
+        System.out.println(String.format("%-34s failed: %s", b.name, e));
+        return;
+    }
+    double mean = 0, dev = 0;
+    for (double v : nsPerOp) { mean += v / meas; }
+    for (double v : nsPerOp) { dev += (v - mean) * (v - mean) / meas; }
+    System.out.println(String.format("%-34s %14.0f %12.1f %12.1f",
+        b.name, 1e9 / mean, mean, Math.sqrt(dev)));
+} //end function { measure() }
+
+
+/**
+##########################################################
+# Purpose: Find an embedded database: the -d one, else H2,
+#          else Derby, in a new temporary directory.
+# Returns: false if no driver could be loaded.
+##########################################################
+**/
+static boolean find_embedded_database() {
+    String[][] known = {
+        {"org.h2.Driver",                      "jdbc:h2:"},
+        {"org.apache.derby.jdbc.EmbeddedDriver", "jdbc:derby:"}
+    };
+    if (dbDriver != null) {
+        try {
+            Class.forName(dbDriver);
+            return true;
+        } catch (ClassNotFoundException e) {
+            System.out.println("Warning: MetaqaBench: "+e);
+            return false;
+        }
+    } //end if
+    for (String[] k : known) {
+        try {
+            Class.forName(k[0]);
+            File dir = new File(System.getProperty("java.io.tmpdir"),
+                "metaqa_bench_"+System.currentTimeMillis());
+            dir.mkdirs();
+            dbDriver = k[0];
+            dbUrl = k[1] + new File(dir, "db").getAbsolutePath()
+                  + (k[0].indexOf("derby") >= 0 ? ";create=true" : "");
+            return true;
+        } catch (ClassNotFoundException e) {
+            // Try the next one.
+        }
+    } //end for
+    return false;
+} //end function { find_embedded_database() }
+
+
+/**
+##########################################################
+# Purpose: The end-to-end benchmarks. Each iteration is one
+#          metaqa run, and one operation is one source row.
+##########################################################
+**/
+static List<Case> end_to_end_benchmarks() {
+    List<Case> list = new ArrayList<Case>();
+    final File dir;
+    try {
+        dir = create_database_and_files("BENCH_T", tgt, "BENCH_S", src);
+    } catch (Exception e) {
+        System.out.println("Skipping the end-to-end benchmarks: "+e);
+        return list;
+    }
+    list.add(new Case("end-to-end file lookup") {
+        long run() throws Exception {
+            run_metaqa(dir, "BENCH_T", new String[] {"-i", "BENCH_T.unl", "-H"});
+            return rows;
+        }
+    });
+    list.add(new Case("end-to-end SQL lookup") {
+        long run() throws Exception {
+            run_metaqa(dir, "BENCH_T", new String[] {"-i", "BENCH_S.sql",
+                "-Src", dbDriver, dbUrl, dbUser, dbPassword});
+            return rows;
+        }
+    });
+    return list;
+} //end function { end_to_end_benchmarks() }
+
+
+/**
+##########################################################
+# Purpose: Create and fill the target table <tgtTab> and a
+#          source table <srcTab> with synthetic rows, an empty
+#          meta-data table, a HEADER| flat file <tgtTab>.unl of
+#          the source rows and a source SQL file <srcTab>.sql.
+# Returns: The directory metaqa must run in.
+##########################################################
+**/
+static File create_database_and_files(String tgtTab, String[][] tgtCells,
+        String srcTab, String[][] srcCells) throws SQLException, IOException {
+    Connection conn = DriverManager.getConnection(dbUrl, dbUser, dbPassword);
+    Statement st = conn.createStatement();
+    String[] drop = {tgtTab, srcTab, "meta_dwh_table_field"};
+    for (String d : drop) {
+        try {
+            st.executeUpdate("drop table "+d);
+        } catch (SQLException e) {
+            // Not there yet.
+        }
+    } //end for
+    st.executeUpdate("create table meta_dwh_table_field (table_name varchar(64),"
+        +" field_name varchar(64), source_field_type varchar(32), source_field_name varchar(64),"
+        +" source_table_name varchar(64), primary_unique_key_ind char(1),"
+        +" source_system_name varchar(16), design_status varchar(16), design_sequence integer)");
+    create_and_fill(conn, tgtTab, tgtCells);
+    create_and_fill(conn, srcTab, srcCells);
+    st.close();
+    conn.close();
+    shut_down_database();
+
+    File dir = new File(System.getProperty("java.io.tmpdir"), "metaqa_bench_run");
+    dir.mkdirs();
+    StringBuilder head = new StringBuilder("HEADER");
+    StringBuilder select = new StringBuilder("select ");
+    for (int j=1; j<=cols; j++) {
+        head.append('|').append(colName[j]);
+        select.append(j > 1 ? ", " : "").append(colName[j]).append(" as ").append(colName[j]);
+    } //end for
+    Writer w = new BufferedWriter(new FileWriter(new File(dir, tgtTab+".unl")), 65536);
+    w.write(head.append('\n').toString());
+    for (String[] row : srcCells) {
+        for (int j=1; j<=cols; j++) {
+            w.write(row[j]);
+            w.write(j < cols ? '|' : '\n');
+        } //end for
+    } //end for
+    w.close();
+    w = new FileWriter(new File(dir, srcTab+".sql"));
+    w.write(select.append(" from ").append(srcTab).append(";\n").toString());
+    w.close();
+    return dir;
+} //end function { create_database_and_files() }
+
+
+/**
+##########################################################
+# Purpose: Create a table of the synthetic column types and
+#          insert <cells> into it in batches.
+##########################################################
+**/
+static void create_and_fill(Connection conn, String tab, String[][] cells) throws SQLException {
+    StringBuilder ddl = new StringBuilder("create table "+tab+" (");
+    StringBuilder ins = new StringBuilder("insert into "+tab+" values (");
+    for (int j=1; j<=cols; j++) {
+        ddl.append(j > 1 ? ", " : "").append(colName[j]).append(
+              j == 1                         ? " integer not null primary key"
+            : colType[j] == Metaqa._numeric  ? " decimal(12,2)"
+            : colType[j] == Metaqa._date     ? " date"
+            :                                  " varchar(40)");
+        ins.append(j > 1 ? ", ?" : "?");
+    } //end for
+    conn.createStatement().executeUpdate(ddl.append(")").toString());
+    conn.setAutoCommit(false);
+    PreparedStatement prep = conn.prepareStatement(ins.append(")").toString());
+    SimpleDateFormat sFmt = new SimpleDateFormat(srcDateFormat);
+    SimpleDateFormat tFmt = new SimpleDateFormat(tgtDateFormat);
+    try {
+        for (int r=0; r<cells.length; r++) {
+            for (int j=1; j<=cols; j++) {
+                String v = cells[r][j];
+                if (j == 1) {
+                    prep.setInt(j, Integer.parseInt(v));
+                } else if (colType[j] == Metaqa._numeric) {
+                    prep.setBigDecimal(j, new BigDecimal(v));
+                } else if (colType[j] == Metaqa._date) {
+                    java.util.Date d = (v.indexOf('/') >= 0 ? sFmt : tFmt).parse(v);
+                    prep.setDate(j, new java.sql.Date(d.getTime()));
+                } else {
+                    prep.setString(j, v);
+                } //end if
+            } //end for
+            prep.addBatch();
+            if ((r+1) % 1000 == 0) {
+                prep.executeBatch();
+            } //end if
+        } //end for
+        prep.executeBatch();
+        conn.commit();
+    } catch (java.text.ParseException e) {
+        throw new SQLException("create_and_fill(): "+e);
+    } finally {
+        prep.close();
+        conn.setAutoCommit(true);
+    }
+} //end function { create_and_fill() }
+
+
+/**
+##########################################################
+# Purpose: Close an embedded database, so that the metaqa
+#          JVM can open it. H2 closes with its last connection.
+##########################################################
+**/
+static void shut_down_database() {
+    if (dbUrl.startsWith("jdbc:derby:")) {
+        try {
+            DriverManager.getConnection(dbUrl.replaceAll(";.*$", "")+";shutdown=true");
+        } catch (SQLException e) {
+            // Derby always reports a shut down as an SQLException.
+        }
+    } //end if
+} //end function { shut_down_database() }
+
+
+/**
+##########################################################
+# Purpose: Run metaqa in its own JVM in <dir> against the
+#          embedded database, with its output in <table>.log.
+# Returns: The elapsed nano seconds.
+##########################################################
+**/
+static long run_metaqa(File dir, String table, String[] more) throws Exception {
+    return run_metaqa(dir, table, more, new String[] {"Metaqa"}, null);
+} //end function { run_metaqa() }
+
+
+/**
+##########################################################
+# Purpose: As above, but the JVM runs <main>, and each line
+#          of output is also offered to <seen>, if given.
+##########################################################
+**/
+static long run_metaqa(File dir, String table, String[] more, String[] main,
+        List<String> seen) throws Exception {
+    List<String> cmd = new ArrayList<String>(Arrays.asList(new String[] {
+        new File(new File(System.getProperty("java.home"), "bin"), "java").getPath(),
+        "-cp", System.getProperty("java.class.path")}));
+    cmd.addAll(Arrays.asList(main));
+    cmd.addAll(Arrays.asList(new String[] {
+        "-t", table, "-k", "1,",
+        "-m", String.valueOf(Integer.MAX_VALUE),
+        "-l", String.valueOf(Integer.MAX_VALUE),
+        "-p", String.valueOf(Integer.MAX_VALUE),
+        "-Tgt", dbDriver, dbUrl, dbUser, dbPassword,
+        "-Met", dbDriver, dbUrl, dbUser, dbPassword}));
+    cmd.addAll(Arrays.asList(more));
+    ProcessBuilder pb = new ProcessBuilder(cmd);
+    pb.directory(dir);
+    pb.redirectErrorStream(true);
+    long t0 = System.nanoTime();
+    Process proc = pb.start();
+    BufferedReader in = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+    PrintWriter log = new PrintWriter(new FileWriter(new File(dir, table+".log")));
+    for (String line = in.readLine(); line != null; line = in.readLine()) {
+        log.println(line);
+        if (seen != null) {
+            seen.add(line);
+        } //end if
+    } //end for
+    log.close();
+    int exit = proc.waitFor();
+    long elapsed = System.nanoTime() - t0;
+    if (exit != 0) {
+        throw new Exception("metaqa exit code "+exit+". See "+new File(dir, table+".log"));
+    } //end if
+    return elapsed;
+} //end function { run_metaqa() }
+
+} //end of Class MetaqaBench
+// End of file.
@@ -0,0 +1,314 @@
+/**
+   ################################################################
+   # metaqa: A program for comparing any source data
+   #         with any target data by using SQL.
+   # Copyright (C) 2006, 2007, 2008  Mark Besaans. South Africa.
+   #
+   # This program is free software; you can redistribute it and/or
+   # modify it under the terms of the GNU General Public License
+   # as published by the Free Software Foundation; either version 2
+   # of the License, or (at your option) any later version.
+   #
+   # Refer to gpl.txt distributed with this file.
+   ################################################################
+
+ * ###############################################################
+ * Purpose: A reproducible end-to-end throughput harness, to track
+ *          metaqa throughput from release to release without
+ *          touching a production database.
+ * Input  : Command-line <parameters>. See usage().
+ * Output : Rows per second, database round trips, the heap high water
+ *          mark and the allocation rate of all the threads of each metaqa
+ *          mode, on standard output and optionally appended to a tab
+ *          delimited file.
+ * Scenarios: Against a generated target table in an embedded database:
+ *      1) Flat file, per-row lookup.
+ *      2) Flat file, per-row lookup and reverse compare (-r). Informix only.
+ *      3) Source SQL, per-row lookup.
+ *      4) Source SQL, per-row lookup and reverse compare (-r). Informix only.
+ * Usage  : java -cp metaqa.jar:lib/*:h2.jar MetaqaLoad -r 100000 -k 30 -o load.tsv
+ * ###############################################################
+ * Maintenance Programmer notes:
+ *      1) The rows, tables and files are made by MetaqaBench, from a
+ *      fixed seed, so that every run compares the same data.
+ *      2) Each mode runs in its own JVM as "MetaqaLoad -child ...",
+ *      which runs Metaqa.main() and reports its measurements from a
+ *      shut down hook, because metaqa ends with System.exit().
+ *      3) The reverse compare creates its key table with Informix temp
+ *      table syntax, so the -r modes are skipped unless -d names an
+ *      Informix database.
+ *      4) Each thread's allocation is sampled every 50ms, so that the
+ *      threads that end before metaqa does are counted too, bar their
+ *      last 50ms.
+ * ###############################################################
+ */
+import java.io.*;
+import java.lang.management.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+public class MetaqaLoad {
+    static int missingPct = 2;                   //# -x Percentage of source keys not in the target.
+    static int reverseMissingPct = 2;            //# -X Percentage of target keys not in the source.
+    static String only = null;                   //# -b Run only modes whose names contain this.
+    static String resultFile = null;             //# -o Append the results to this tab delimited file.
+    static final String tgtTab = "LOAD_T";
+    static final String srcTab = "LOAD_S";
+    static final String tag = "METAQA_LOAD";     //# Marks the child's measurement line.
+
+
+/**
+ * @param args . Refer to the usage() method.
+ **/
+public static void main(String[] args) {
+    if (args.length > 0 && args[0].equals("-child")) {
+        child(Arrays.copyOfRange(args, 1, args.length));
+        return;
+    } //end if
+    command_line(args);
+    if (!MetaqaBench.find_embedded_database()) {
+        System.out.println("Error: MetaqaLoad: No H2 or Derby JDBC driver on the classpath."
+            +" Add one, or name one with -d driver url.");
+        System.exit(1);
+    } //end if
+    MetaqaBench.generate_rows();
+    List<String[]> tgtRows = new ArrayList<String[]>();
+    List<String[]> srcRows = new ArrayList<String[]>();
+    Random rnd = new Random(20080804L);
+    for (int r=0; r<MetaqaBench.rows; r++) {
+        int pick = rnd.nextInt(100);
+        if (pick >= missingPct) {                                   //# Else source only.
+            tgtRows.add(MetaqaBench.tgt[r]);
+        } //end if
+        if (pick < missingPct || pick >= missingPct + reverseMissingPct) { //# Else target only.
+            srcRows.add(MetaqaBench.src[r]);
+        } //end if
+    } //end for
+    File dir = null;
+    try {
+        dir = MetaqaBench.create_database_and_files(
+            tgtTab, tgtRows.toArray(new String[0][]),
+            srcTab, srcRows.toArray(new String[0][]));
+    } catch (Exception e) {
+        System.out.println("Error: MetaqaLoad: Creating the test database: "+e);
+        System.exit(1);
+    }
+    System.out.println(Metaqa._version+". MetaqaLoad: "+tgtRows.size()+" target and "
+        +srcRows.size()+" source rows of "+MetaqaBench.cols+" columns, "
+        +MetaqaBench.matchPct+"% matching cells, "+missingPct+"% missing and "
+        +reverseMissingPct+"% reverse missing keys. Database: "+MetaqaBench.dbUrl);
+    System.out.println(String.format("%-22s %9s %8s %10s %11s %10s %10s",
+        "Mode", "Rows", "Seconds", "Rows/s", "RoundTrips", "PeakHeapMB", "AllocMB/s"));
+    String[] src = {"-Src", MetaqaBench.dbDriver, MetaqaBench.dbUrl,
+                    MetaqaBench.dbUser, MetaqaBench.dbPassword};
+    Object[][] modes = {
+        {"file lookup",    new String[] {"-i", tgtTab+".unl", "-H"}},
+        {"file lookup -r", new String[] {"-i", tgtTab+".unl", "-H", "-r"}},
+        {"SQL lookup",     join(new String[] {"-i", srcTab+".sql"}, src)},
+        {"SQL lookup -r",  join(new String[] {"-i", srcTab+".sql", "-r"}, src)}
+    };
+    for (Object[] mode : modes) {
+        if (only != null && ((String) mode[0]).indexOf(only) < 0) {
+            // Not asked for.
+        } else if (((String) mode[0]).endsWith(" -r") && !MetaqaBench.dbUrl.startsWith("jdbc:informix")) {
+            System.out.println(String.format("%-22s skipped: The reverse compare needs Informix"
+                +" temp tables. Name an Informix database with -d.", mode[0]));
+        } else {
+            run_mode(dir, (String) mode[0], (String[]) mode[1]);
+        } //end if
+    } //end for
+} //end function { main() }
+
+
+static String[] join(String[] a, String[] b) {
+    String[] ab = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, ab, a.length, b.length);
+    return ab;
+} //end function { join() }
+
+
+/**
+##########################################################
+# Purpose: Parse the command line. The data options are
+#          MetaqaBench's.
+##########################################################
+ *
+ * @param args
+ */
+static void command_line(String[] args) {
+    try {
+        for (int i=0; i<args.length; i++) {
+            String a = args[i];
+            if      (a.equals("-r")) { MetaqaBench.rows     = Integer.parseInt(args[++i]); }
+            else if (a.equals("-k")) { MetaqaBench.cols     = Integer.parseInt(args[++i]); }
+            else if (a.equals("-M")) { MetaqaBench.matchPct = Integer.parseInt(args[++i]); }
+            else if (a.equals("-x")) { missingPct           = Integer.parseInt(args[++i]); }
+            else if (a.equals("-X")) { reverseMissingPct    = Integer.parseInt(args[++i]); }
+            else if (a.equals("-b")) { only                 = args[++i]; }
+            else if (a.equals("-o")) { resultFile           = args[++i]; }
+            else if (a.equals("-d")) { MetaqaBench.dbDriver = args[++i];
+                                       MetaqaBench.dbUrl    = args[++i]; }
+            else { usage(); System.exit(1); }
+        } //end for
+    } catch (Exception e) {         //# A missing or non-numeric value.
+        usage();
+        System.exit(1);
+    }
+    if (MetaqaBench.cols < 2 || MetaqaBench.rows < 1 || missingPct + reverseMissingPct > 100) {
+        usage();
+        System.exit(1);
+    } //end if
+} //end function { command_line() }
+
+
+static void usage() {
+    System.out.println(
+ "Usage: java MetaqaLoad [-r rows] [-k columns] [-M match%] [-x missing%]"
++" [-X reverse-missing%] [-b mode] [-o file] [-d driver url]"
++"\n   -r rows           Generated rows. Default 20000."
++"\n   -k columns        Columns per row, including the key. Default 40, minimum 2."
++"\n   -M match%         Percentage of cells where source and target agree. Default 95."
++"\n   -x missing%       Percentage of source keys not in the target. Default 2."
++"\n   -X reverse-missing%  Percentage of target keys not in the source. Default 2."
++"\n   -b mode           Run only the modes with <mode> in their name."
++"\n   -o file           Append the results to a tab delimited <file>."
++"\n   -d driver url     The embedded database. Default: H2 or Derby in a temporary directory."
+    );
+} //end function { usage() }
+
+
+/**
+##########################################################
+# Purpose: Run metaqa in one mode and report what the child
+#          measured.
+##########################################################
+**/
+static void run_mode(File dir, String mode, String[] args) {
+    List<String> seen = new ArrayList<String>();
+    String failed = null;
+    try {
+        MetaqaBench.run_metaqa(dir, tgtTab, args, new String[] {"MetaqaLoad", "-child"}, seen);
+    } catch (Exception e) {
+        failed = e.getMessage();
+    }
+    Properties m = new Properties();
+    for (String line : seen) {
+        if (line.startsWith(tag+" ")) {
+            for (String kv : line.substring(tag.length()+1).split(" ")) {
+                String[] pair = kv.split("=", 2);
+                m.setProperty(pair[0], pair[1]);
+            } //end for
+        } //end if
+    } //end for
+    if (failed != null || m.isEmpty()) {
+        System.out.println(String.format("%-22s failed: %s", mode, failed));
+        return;
+    } //end if
+    long rows      = Long.parseLong(m.getProperty("rows"));
+    double seconds = Long.parseLong(m.getProperty("elapsedNs")) / 1e9;
+    long trips     = Long.parseLong(m.getProperty("roundTrips"));
+    double heapMb  = Long.parseLong(m.getProperty("peakHeap")) / 1048576.0;
+    double allocMb = Long.parseLong(m.getProperty("allocated")) / 1048576.0 / seconds;
+    String result = String.format("%-22s %9d %8.2f %10.0f %11d %10.1f %10.1f",
+        mode, rows, seconds, rows / seconds, trips, heapMb, allocMb);
+    System.out.println(result);
+    if (resultFile != null) {
+        try {
+            File f = new File(resultFile);
+            boolean isNew = !f.exists();
+            PrintWriter out = new PrintWriter(new FileWriter(f, true));
+            if (isNew) {
+                out.println("Date\tVersion\tMode\tColumns\tMatch%\tMissing%\tReverseMissing%"
+                    +"\tRows\tSeconds\tRows/s\tRoundTrips\tPeakHeapMB\tAllocMB/s");
+            } //end if
+            out.println(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date())+"\t"+Metaqa._version+"\t"+mode
+                +"\t"+MetaqaBench.cols+"\t"+MetaqaBench.matchPct+"\t"+missingPct
+                +"\t"+reverseMissingPct+"\t"+rows
+                +String.format("\t%.2f\t%.0f\t%d\t%.1f\t%.1f",
+                    seconds, rows / seconds, trips, heapMb, allocMb));
+            out.close();
+        } catch (IOException e) {
+            System.out.println("Warning: MetaqaLoad: Writing "+resultFile+": "+e);
+        }
+    } //end if
+} //end function { run_mode() }
+
+
+/**
+##########################################################
+# Purpose: The child JVM. Run metaqa and, when it exits,
+#          print one line of measurements for the parent.
+##########################################################
+ *
+ * @param args Metaqa's arguments.
+ */
+static void child(String[] args) {
+    final long t0 = System.nanoTime();
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    final Map<Long, Long> allocated = new HashMap<Long, Long>(); //# Bytes allocated by each thread so far.
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        pool.resetPeakUsage();
+    } //end for
+    Thread sampler = new Thread() {              //# A thread's count is lost when it ends.
+        public void run() {
+            while (true) {
+                sample_allocation(threads, allocated);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            } //end while
+        }
+    };
+    sampler.setDaemon(true);
+    sampler.start();
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+        public void run() {
+            long elapsed = System.nanoTime() - t0;
+            long peak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                    peak += pool.getPeakUsage().getUsed();
+                } //end if
+            } //end for
+            sample_allocation(threads, allocated);
+            long bytes = 0;
+            synchronized (allocated) {
+                for (long b : allocated.values()) {
+                    bytes += b;
+                } //end for
+            }
+            System.out.println(tag+" rows="+Metaqa._rowsChecked+" elapsedNs="+elapsed
+                +" roundTrips="+Metaqa._roundTrips+" peakHeap="+peak+" allocated="+bytes);
+        }
+    });
+    Metaqa.main(args);
+} //end function { child() }
+
+
+/**
+##########################################################
+# Purpose: Record the bytes allocated so far by each live
+#          thread in <allocated>, by thread id, where the JVM
+#          can tell. Records nothing where it can not.
+##########################################################
+**/
+static void sample_allocation(ThreadMXBean threads, Map<Long, Long> allocated) {
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+        return;
+    } //end if
+    long[] ids = threads.getAllThreadIds();
+    long[] b = ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(ids);
+    synchronized (allocated) {
+        for (int i=0; i<ids.length; i++) {
+            Long seen = allocated.get(ids[i]);
+            if (b[i] > 0 && (seen == null || b[i] > seen)) {
+                allocated.put(ids[i], b[i]);
+            } //end if
+        } //end for
+    }
+} //end function { sample_allocation() }
+
+} //end of Class MetaqaLoad
+// End of file.